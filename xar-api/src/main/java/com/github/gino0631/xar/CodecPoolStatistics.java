@@ -0,0 +1,49 @@
+package com.github.gino0631.xar;
+
+import com.github.gino0631.xar.spi.CodecPoolStatisticsSpi;
+import com.github.gino0631.xar.spi.ServiceUtils;
+
+/**
+ * Statistics of the pools of compression codecs, which are reused by entry streams.
+ * <p>
+ * A hit means that a codec was taken from a pool, and a miss means that a new codec had to be created.
+ * The counters are cumulative over the lifetime of the implementation.
+ */
+public interface CodecPoolStatistics {
+    /**
+     * Gets the number of decompressors taken from the pool.
+     *
+     * @return number of hits
+     */
+    long getInflaterHits();
+
+    /**
+     * Gets the number of decompressors created because the pool was empty.
+     *
+     * @return number of misses
+     */
+    long getInflaterMisses();
+
+    /**
+     * Gets the number of compressors taken from the pool.
+     *
+     * @return number of hits
+     */
+    long getDeflaterHits();
+
+    /**
+     * Gets the number of compressors created because the pool was empty.
+     *
+     * @return number of misses
+     */
+    long getDeflaterMisses();
+
+    /**
+     * Gets statistics of the codec pools.
+     *
+     * @return a live view of the statistics
+     */
+    static CodecPoolStatistics getInstance() {
+        return ServiceUtils.getImpl(CodecPoolStatisticsSpi.class).getInstance();
+    }
+}
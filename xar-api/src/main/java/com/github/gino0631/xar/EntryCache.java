@@ -0,0 +1,73 @@
+package com.github.gino0631.xar;
+
+import com.github.gino0631.xar.spi.EntryCacheSpi;
+import com.github.gino0631.xar.spi.ServiceUtils;
+
+/**
+ * Cache of decoded and verified entry data, which can be shared by any number of archives.
+ * <p>
+ * To use a cache, pass it as a load option to {@link XarArchive#load(java.nio.file.Path, XarArchive.LoadOption...)};
+ * data of entries not bigger than {@link #getMaxEntrySize()} is then served by {@link XarArchive.Entry#newInputStream()}
+ * from memory once it has been read. Entries are identified by the ToC checksum of their archive and their position
+ * in the ToC, so data stays cached when an archive is closed and loaded again. Least recently used entries are evicted
+ * when the cache grows over {@link #getMaxSize()}.
+ */
+public interface EntryCache extends XarArchive.LoadOption {
+    /**
+     * Gets the maximum total size of the cached data.
+     *
+     * @return size, in bytes
+     */
+    long getMaxSize();
+
+    /**
+     * Gets the maximum size of an entry to cache.
+     *
+     * @return size, in bytes
+     */
+    long getMaxEntrySize();
+
+    /**
+     * Gets the total size of the cached data.
+     *
+     * @return size, in bytes
+     */
+    long getSize();
+
+    /**
+     * Gets the number of reads served from the cache.
+     *
+     * @return number of hits
+     */
+    long getHits();
+
+    /**
+     * Gets the number of reads of cacheable entries, which were not found in the cache.
+     *
+     * @return number of misses
+     */
+    long getMisses();
+
+    /**
+     * Gets the number of entries evicted to keep the cache within its maximum size.
+     *
+     * @return number of evictions
+     */
+    long getEvictions();
+
+    /**
+     * Removes all data from the cache.
+     */
+    void clear();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize      maximum total size of the cached data
+     * @param maxEntrySize maximum size of an entry to cache
+     * @return a new cache
+     */
+    static EntryCache create(long maxSize, long maxEntrySize) {
+        return ServiceUtils.getImpl(EntryCacheSpi.class).create(maxSize, maxEntrySize);
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.gino0631.xar;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Load option, which reads data of large compressed entries ahead like {@link StandardLoadOption#READ_AHEAD}, but
+ * using the specified executor instead of the default one.
+ * <p>
+ * A stream, which has not started reading ahead by the time its data is needed (e.g. because the executor rejected
+ * or queued the task), reads the data in the calling thread instead, so a bounded executor never blocks readers.
+ */
+public final class ReadAheadExecutor implements XarArchive.LoadOption {
+    private final Executor executor;
+
+    private ReadAheadExecutor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * Creates a load option, which reads ahead using the specified executor.
+     *
+     * @param executor executor to run background reads
+     * @return a load option
+     */
+    public static ReadAheadExecutor of(Executor executor) {
+        return new ReadAheadExecutor(executor);
+    }
+
+    /**
+     * Gets the executor running background reads.
+     *
+     * @return executor
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+}
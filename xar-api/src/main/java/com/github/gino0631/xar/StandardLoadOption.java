@@ -0,0 +1,22 @@
+package com.github.gino0631.xar;
+
+/**
+ * Defines the standard load options.
+ */
+public enum StandardLoadOption implements XarArchive.LoadOption {
+    /**
+     * Memory-map the archive file and serve entry data directly from the mapping.
+     * <p>
+     * The mapping is released when the archive is closed, so all entry streams must be closed before that.
+     */
+    MEMORY_MAP,
+
+    /**
+     * Read data of large compressed entries ahead in a background thread, which also computes the archived data checksum.
+     * <p>
+     * This overlaps I/O, checksum computation and decompression, leaving only the latter to the reading thread.
+     * Background reads run in a shared pool of at most as many threads as there are processors; if all of them are
+     * busy, data is read by the reading thread. To use another executor, see {@link ReadAheadExecutor}.
+     */
+    READ_AHEAD
+}
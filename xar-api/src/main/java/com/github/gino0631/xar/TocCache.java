@@ -0,0 +1,39 @@
+package com.github.gino0631.xar;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Load option, which keeps a compact binary index of the ToC of each loaded archive file in a directory, so that
+ * the ToC does not have to be decompressed and parsed when the archive is loaded again.
+ * <p>
+ * An index is used only if the path, size and modification time of the archive, as well as its header and
+ * ToC checksum, are the same as when the index was written; otherwise, the ToC is parsed and the index is rewritten.
+ * Note that the ToC is not verified against its checksum when it is loaded from an index.
+ */
+public final class TocCache implements XarArchive.LoadOption {
+    private final Path directory;
+
+    private TocCache(Path directory) {
+        this.directory = Objects.requireNonNull(directory);
+    }
+
+    /**
+     * Creates a load option, which keeps ToC indexes in the specified directory.
+     *
+     * @param directory directory for the index files, which is created if it does not exist
+     * @return a load option
+     */
+    public static TocCache in(Path directory) {
+        return new TocCache(directory);
+    }
+
+    /**
+     * Gets the directory of the index files.
+     *
+     * @return directory path
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+}
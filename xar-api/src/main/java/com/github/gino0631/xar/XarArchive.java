@@ -4,16 +4,25 @@ import com.github.gino0631.common.io.InputStreamSupplier;
 import com.github.gino0631.common.io.Writable;
 import com.github.gino0631.xar.spi.ServiceUtils;
 import com.github.gino0631.xar.spi.XarArchiveSpi;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 import java.security.cert.X509Certificate;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
 
 /**
  * XAR archive representation.
@@ -21,6 +30,19 @@ import java.util.List;
  * Implementations of this interface are required to be thread-safe.
  */
 public interface XarArchive extends Writable, Closeable {
+    /**
+     * Default maximum gap between entries, which are read at once by {@link #readAll(Collection, EntryHandler)}.
+     */
+    int DEFAULT_READ_GAP = 4096;
+
+    /**
+     * An option configuring how an archive is loaded.
+     *
+     * @see StandardLoadOption
+     */
+    interface LoadOption {
+    }
+
     /**
      * XAR header representation.
      */
@@ -164,6 +186,169 @@ public interface XarArchive extends Writable, Closeable {
          */
         InputStream newInputStream() throws IOException;
 
+        /**
+         * Gets input stream of the entry, starting at the specified offset of the extracted data.
+         * <p>
+         * Stored entries are read directly from the offset. Encoded entries are decoded from the closest preceding
+         * checkpoint of their {@link SeekIndex seek index}, if one has been created or loaded, or from the start
+         * otherwise. Since checksums cover whole entries, data read from this stream is not verified.
+         *
+         * @param offset offset of the extracted data to start at
+         * @return input stream, or {@code null} if the entry contains no data (e.g. because it is a directory)
+         * @throws IOException if an I/O error occurs
+         */
+        InputStream newInputStream(long offset) throws IOException;
+
+        /**
+         * Creates a seek index of the entry by decoding it once, and attaches it to the entry. The entry data is
+         * verified while the index is being built.
+         * <p>
+         * Each checkpoint holds up to 32 KiB of decoded data, so the span determines the memory used by the index
+         * as well as the amount of data decoded in vain when seeking.
+         *
+         * @param span minimum distance between checkpoints, in bytes of the extracted data
+         * @return the index
+         * @throws IOException                   if an I/O error occurs, or if a checksum or the size does not match
+         * @throws UnsupportedOperationException if the entry contains no data, or its encoding does not support seek indexes
+         */
+        SeekIndex createSeekIndex(long span) throws IOException;
+
+        /**
+         * Loads a seek index previously saved with {@link SeekIndex#writeTo(OutputStream)}, and attaches it to the entry.
+         *
+         * @param input stream to read the index from
+         * @return the index
+         * @throws IOException                   if an I/O error occurs, or if the index was created for different data
+         * @throws UnsupportedOperationException if the entry contains no data, or its encoding does not support seek indexes
+         */
+        SeekIndex loadSeekIndex(InputStream input) throws IOException;
+
+        /**
+         * Gets the seek index attached to the entry.
+         *
+         * @return the index, or {@code null} if no index has been created or loaded
+         */
+        SeekIndex getSeekIndex();
+
+        /**
+         * Gets encoding of the entry data.
+         *
+         * @return encoding algorithm, or {@code null} if the entry contains no data, or its encoding is unknown
+         */
+        EncodingAlgorithm getEncoding();
+
+        /**
+         * Gets algorithm of the checksum computed over the archived (encoded) data.
+         *
+         * @return checksum algorithm, or {@code null} if the entry contains no data, or the checksum is not specified
+         */
+        ChecksumAlgorithm getArchivedChecksumAlgorithm();
+
+        /**
+         * Gets checksum of the archived (encoded) data.
+         *
+         * @return checksum, or {@code null} if the entry contains no data, or the checksum is not specified
+         */
+        byte[] getArchivedChecksum();
+
+        /**
+         * Gets input stream of the archived entry data, verifying its checksum. Equivalent to calling
+         * {@link #newRawInputStream(boolean)} with {@code verify} set to {@code true}.
+         *
+         * @return input stream, or {@code null} if the entry contains no data (e.g. because it is a directory)
+         * @throws IOException if an I/O error occurs
+         */
+        default InputStream newRawInputStream() throws IOException {
+            return newRawInputStream(true);
+        }
+
+        /**
+         * Gets input stream of the archived entry data, which is not decoded. For example, data encoded with
+         * {@link EncodingAlgorithm#ZLIB} is returned as a zlib stream, suitable for {@code Content-Encoding: deflate}.
+         *
+         * @param verify whether to verify the archived data checksum when the stream is closed
+         * @return input stream, or {@code null} if the entry contains no data (e.g. because it is a directory)
+         * @throws IOException if an I/O error occurs
+         */
+        InputStream newRawInputStream(boolean verify) throws IOException;
+
+        /**
+         * Transfers data of the entry to a channel, verifying its checksums. Equivalent to calling
+         * {@link #transferTo(WritableByteChannel, boolean)} with {@code verify} set to {@code true}.
+         *
+         * @param target channel to write to, which must be in blocking mode
+         * @return number of bytes written
+         * @throws IOException if an I/O error occurs, or if a checksum does not match
+         */
+        default long transferTo(WritableByteChannel target) throws IOException {
+            return transferTo(target, true);
+        }
+
+        /**
+         * Transfers data of the entry to a channel.
+         * <p>
+         * Data of stored (not encoded) entries is transferred without passing through the Java heap where possible,
+         * e.g. from a file to a socket. Their checksums, if requested, are verified before any data is written,
+         * which requires the data to be read twice. Data of encoded entries is decoded and always verified.
+         *
+         * @param target channel to write to, which must be in blocking mode
+         * @param verify whether to verify checksums of stored entries
+         * @return number of bytes written, or {@code 0} if the entry contains no data
+         * @throws IOException              if an I/O error occurs, or if a checksum does not match
+         * @throws IllegalArgumentException if the target is a selectable channel in non-blocking mode
+         */
+        long transferTo(WritableByteChannel target, boolean verify) throws IOException;
+
+        /**
+         * Opens a read-only channel with random access to data of a stored (not encoded) entry. Positioning the channel
+         * does not read any data, so any part of the entry can be read without reading it from the start.
+         * <p>
+         * Data read through the channel is not verified, since checksums cover the whole entry; use {@link #verify()}
+         * to verify it separately.
+         *
+         * @return seekable byte channel, or {@code null} if the entry contains no data (e.g. because it is a directory)
+         * @throws IOException                   if an I/O error occurs
+         * @throws UnsupportedOperationException if the entry data is encoded
+         */
+        SeekableByteChannel newChannel() throws IOException;
+
+        /**
+         * Verifies checksums of the entry data, reading it fully. Does nothing if the entry contains no data.
+         *
+         * @throws IOException if an I/O error occurs, or if a checksum does not match
+         */
+        void verify() throws IOException;
+
+        /**
+         * Reads the entry data asynchronously. Reading, decoding and verification of the data are done by a task
+         * submitted to the specified executor, so the calling thread never blocks.
+         *
+         * @param executor executor to read the data with
+         * @return future completed with the data, which is empty if the entry contains no data, or completed
+         * exceptionally with an {@link IOException} if an I/O error occurs, or if a checksum does not match
+         */
+        CompletableFuture<byte[]> readAsync(Executor executor);
+
+        /**
+         * Gets a publisher of the entry data, which reads and decodes the data only as subscribers request it.
+         * <p>
+         * Every subscriber reads the data separately, in chunks of the specified size, except for the last one.
+         * All data is published up to the end of the decoded stream, even if it differs from {@link #getSize()}.
+         * Checksums are verified when all data has been read, before {@link Subscriber#onComplete()} is called,
+         * and failures are signalled by {@link Subscriber#onError(Throwable)}. Subscribers of entries containing
+         * no data are completed on their first request.
+         * <p>
+         * On Java 9 and later, the publisher can be adapted to {@code java.util.concurrent.Flow} with
+         * {@code org.reactivestreams.FlowAdapters}.
+         *
+         * @param chunkSize maximum size of a chunk
+         * @param executor  executor to read the data with, which should not run tasks in event loop threads, since
+         *                  reading blocks
+         * @return publisher of data chunks
+         * @throws IllegalArgumentException if the chunk size is not positive
+         */
+        Publisher<ByteBuffer> publisher(int chunkSize, Executor executor);
+
         /**
          * Gets entries contained in this entry.
          *
@@ -172,6 +357,43 @@ public interface XarArchive extends Writable, Closeable {
         List<Entry> getEntries();
     }
 
+    /**
+     * Index of checkpoints, from which decoding of an encoded entry can be started instead of its beginning.
+     * It can be saved with {@link #writeTo(OutputStream)}, e.g. next to the archive, to avoid building it again.
+     */
+    interface SeekIndex extends Writable {
+        /**
+         * Gets the minimum distance between checkpoints.
+         *
+         * @return distance, in bytes of the extracted data
+         */
+        long getSpan();
+
+        /**
+         * Gets the number of checkpoints.
+         *
+         * @return number of checkpoints
+         */
+        int getCheckpointCount();
+    }
+
+    /**
+     * Handler of entry data.
+     */
+    @FunctionalInterface
+    interface EntryHandler {
+        /**
+         * Handles data of an entry.
+         * <p>
+         * The provided stream must not be used after this method returns; unread data is verified and skipped afterwards.
+         *
+         * @param entry entry being read
+         * @param input input stream of the entry
+         * @throws IOException if an I/O error occurs
+         */
+        void handle(Entry entry, InputStream input) throws IOException;
+    }
+
     /**
      * Gets XAR header.
      *
@@ -207,6 +429,92 @@ public interface XarArchive extends Writable, Closeable {
      */
     List<Entry> getEntries();
 
+    /**
+     * Gets entries having data, in the order of their location in the archive.
+     * <p>
+     * Reading entries in this order results in sequential I/O, which is preferable for full extraction or scanning.
+     *
+     * @return unmodifiable list of entries
+     */
+    List<Entry> entriesInHeapOrder();
+
+    /**
+     * Reads data of the specified entries, merging reads of entries located close to each other in the archive.
+     * Equivalent to calling {@link #readAll(Collection, int, EntryHandler)} with the default gap threshold.
+     *
+     * @param entries entries of this archive to read; entries having no data are ignored
+     * @param handler handler to call for each entry
+     * @throws IOException if an I/O error occurs, or if a checksum does not match
+     */
+    default void readAll(Collection<Entry> entries, EntryHandler handler) throws IOException {
+        readAll(entries, DEFAULT_READ_GAP, handler);
+    }
+
+    /**
+     * Reads data of the specified entries, merging reads of entries located close to each other in the archive.
+     * <p>
+     * Entries are passed to the handler in the order of their location in the archive. Reading many small entries
+     * this way results in a few large reads instead of a read per entry.
+     *
+     * @param entries entries of this archive to read; entries having no data are ignored
+     * @param maxGap  maximum number of unused bytes between entries, which are still read at once
+     * @param handler handler to call for each entry
+     * @throws IOException if an I/O error occurs, or if a checksum does not match
+     */
+    void readAll(Collection<Entry> entries, int maxGap, EntryHandler handler) throws IOException;
+
+    /**
+     * Reads data of the entries matching a predicate asynchronously, like {@link #readAll(Collection, EntryHandler)}
+     * does with the matching entries. Entries are selected, read and passed to the sink by a task submitted to
+     * the specified executor, so the calling thread never blocks; cancelling the returned future stops reading
+     * before the next entry.
+     *
+     * @param predicate predicate selecting entries to read
+     * @param sink      handler to call for each entry, in the executor thread
+     * @param executor  executor to read the data with
+     * @return future completed when all entries have been handled, or completed exceptionally with an
+     * {@link IOException} if an I/O error occurs, or if a checksum does not match, or with any exception thrown
+     * by the sink
+     */
+    CompletableFuture<Void> readAllAsync(Predicate<? super Entry> predicate, EntryHandler sink, Executor executor);
+
+    /**
+     * Gets an entry by its path. Equivalent to calling {@link #getEntry(String, boolean)} with {@code ignoreCase} set to {@code false}.
+     *
+     * @param path path of the entry, as returned by {@link Entry#getPath()}
+     * @return entry, or {@code null} if there is no entry with such path
+     */
+    default Entry getEntry(String path) {
+        return getEntry(path, false);
+    }
+
+    /**
+     * Gets an entry by its path.
+     * <p>
+     * If several entries have the same path, the first one in the archive is returned.
+     *
+     * @param path       path of the entry, as returned by {@link Entry#getPath()}; the leading "/" may be omitted
+     * @param ignoreCase whether to ignore case differences when comparing paths
+     * @return entry, or {@code null} if there is no entry with such path
+     */
+    Entry getEntry(String path, boolean ignoreCase);
+
+    /**
+     * Gets an entry by its identifier.
+     *
+     * @param id identifier of the entry, as returned by {@link Entry#getId()}
+     * @return entry, or {@code null} if there is no entry with such identifier
+     */
+    Entry getEntryById(long id);
+
+    /**
+     * Gets all entries located under the specified path, at any depth.
+     *
+     * @param path path of the parent entry, as returned by {@link Entry#getPath()}; the leading "/" may be omitted
+     * @return unmodifiable list of entries, sorted by their paths
+     */
+    List<Entry> entriesUnder(String path);
+
     /**
      * Writes the archive to the specified output stream.
      * <p>
@@ -228,6 +536,20 @@ public interface XarArchive extends Writable, Closeable {
         return ServiceUtils.getImpl(XarArchiveSpi.class).load(file);
     }
 
+    /**
+     * Loads XAR archive from a file using the specified options.
+     *
+     * @param file    file to read from
+     * @param options options specifying how the archive is loaded
+     * @return XAR archive representation
+     * @throws IOException              if an I/O error occurs
+     * @throws IllegalArgumentException if an option is not supported, e.g. because it is implemented outside of
+     *                                  this library
+     */
+    static XarArchive load(Path file, LoadOption... options) throws IOException {
+        return ServiceUtils.getImpl(XarArchiveSpi.class).load(file, options);
+    }
+
     /**
      * Loads XAR archive from a supplier of input streams.
      *
@@ -0,0 +1,97 @@
+package com.github.gino0631.xar;
+
+import com.github.gino0631.xar.spi.ServiceUtils;
+import com.github.gino0631.xar.spi.XarArchivePoolSpi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Pool of archives loaded on demand from files, which keeps a bounded number of them open.
+ * <p>
+ * Archives are obtained by {@link #acquire(Path)} as leases, and stay open while they are leased.
+ * When the pool holds more than {@link #getMaxOpen()} archives, least recently used ones are evicted, and closed
+ * as soon as their last lease is released, so reads in progress are never interrupted.
+ */
+public interface XarArchivePool extends Closeable {
+    /**
+     * Lease of an archive, which keeps the archive open until it is closed.
+     */
+    interface Lease extends Closeable {
+        /**
+         * Gets the leased archive, which must not be closed directly, nor used after the lease is closed.
+         *
+         * @return the archive
+         */
+        XarArchive getArchive();
+
+        /**
+         * Releases the archive.
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * Gets an archive, loading it if it is not open yet.
+     *
+     * @param file path of the archive file
+     * @return a new lease of the archive
+     * @throws IOException if an I/O error occurs while loading the archive
+     * @throws IllegalStateException if the pool is closed
+     */
+    Lease acquire(Path file) throws IOException;
+
+    /**
+     * Gets the maximum number of archives kept open.
+     *
+     * @return number of archives
+     */
+    int getMaxOpen();
+
+    /**
+     * Gets the number of open archives, including evicted ones, which are still leased.
+     *
+     * @return number of archives
+     */
+    int getOpenCount();
+
+    /**
+     * Gets the number of acquisitions of archives, which were already open.
+     *
+     * @return number of hits
+     */
+    long getHits();
+
+    /**
+     * Gets the number of acquisitions, which loaded an archive.
+     *
+     * @return number of misses
+     */
+    long getMisses();
+
+    /**
+     * Gets the number of archives evicted to keep the pool within its maximum size.
+     *
+     * @return number of evictions
+     */
+    long getEvictions();
+
+    /**
+     * Closes the pool. Archives which are not leased are closed immediately, the rest when their leases are released.
+     */
+    @Override
+    void close();
+
+    /**
+     * Creates a new pool.
+     *
+     * @param maxOpen maximum number of archives to keep open
+     * @param options options to load archives with
+     * @return a new pool
+     */
+    static XarArchivePool create(int maxOpen, XarArchive.LoadOption... options) {
+        return ServiceUtils.getImpl(XarArchivePoolSpi.class).create(maxOpen, options);
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.gino0631.xar;
+
+import com.github.gino0631.xar.spi.ServiceUtils;
+import com.github.gino0631.xar.spi.XarStreamReaderSpi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Forward-only reader of XAR archives, for sources which can be read only once (e.g. network streams or pipes).
+ * <p>
+ * Header and ToC are read when the reader is opened. Entry data is then read in the order of its location in the archive
+ * by {@link #readEntries(XarArchive.EntryHandler)}, consuming the source exactly once.
+ */
+public interface XarStreamReader extends Closeable {
+    /**
+     * Gets XAR header.
+     *
+     * @return XAR header representation
+     */
+    XarArchive.Header getHeader();
+
+    /**
+     * Gets XAR creation time.
+     *
+     * @return creation date and time
+     */
+    Date getCreationTime();
+
+    /**
+     * Gets XAR signature.
+     *
+     * @return XAR signature representation
+     */
+    XarArchive.Signature getSignature();
+
+    /**
+     * Gets XAR x-signature.
+     *
+     * @return XAR x-signature representation
+     */
+    XarArchive.Signature getXSignature();
+
+    /**
+     * Gets a list of entries present in the archive.
+     * <p>
+     * Data of the entries can only be read by {@link #readEntries(XarArchive.EntryHandler)}.
+     *
+     * @return unmodifiable list of entries
+     */
+    List<XarArchive.Entry> getEntries();
+
+    /**
+     * Reads data of all entries having it, in the order of their location in the archive.
+     * <p>
+     * Checksums of each entry are verified after the handler returns, even if it has not read all the data.
+     * Entries sharing their data (e.g. hard links) are all passed to the handler, at the cost of holding a copy of
+     * the shared data in memory. This method can be called only once.
+     *
+     * @param handler handler to pass entry data to
+     * @throws IOException if an I/O error occurs, or if a checksum does not match
+     */
+    void readEntries(XarArchive.EntryHandler handler) throws IOException;
+
+    /**
+     * Opens XAR archive from an input stream.
+     * <p>
+     * The provided input stream will be closed when the reader is closed.
+     *
+     * @param input input stream to read from
+     * @return XAR stream reader
+     * @throws IOException if an I/O error occurs
+     */
+    static XarStreamReader open(InputStream input) throws IOException {
+        return ServiceUtils.getImpl(XarStreamReaderSpi.class).open(input);
+    }
+}
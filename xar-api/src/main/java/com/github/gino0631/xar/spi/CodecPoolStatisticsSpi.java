@@ -0,0 +1,7 @@
+package com.github.gino0631.xar.spi;
+
+import com.github.gino0631.xar.CodecPoolStatistics;
+
+public interface CodecPoolStatisticsSpi {
+    CodecPoolStatistics getInstance();
+}
@@ -0,0 +1,7 @@
+package com.github.gino0631.xar.spi;
+
+import com.github.gino0631.xar.EntryCache;
+
+public interface EntryCacheSpi {
+    EntryCache create(long maxSize, long maxEntrySize);
+}
@@ -0,0 +1,8 @@
+package com.github.gino0631.xar.spi;
+
+import com.github.gino0631.xar.XarArchive;
+import com.github.gino0631.xar.XarArchivePool;
+
+public interface XarArchivePoolSpi {
+    XarArchivePool create(int maxOpen, XarArchive.LoadOption... options);
+}
@@ -7,7 +7,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 
 public interface XarArchiveSpi {
-    XarArchive load(Path file) throws IOException;
+    XarArchive load(Path file, XarArchive.LoadOption... options) throws IOException;
 
     XarArchive load(InputStreamSupplier streamSupplier) throws IOException;
 }
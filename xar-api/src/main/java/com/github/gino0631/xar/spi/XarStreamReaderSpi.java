@@ -0,0 +1,10 @@
+package com.github.gino0631.xar.spi;
+
+import com.github.gino0631.xar.XarStreamReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface XarStreamReaderSpi {
+    XarStreamReader open(InputStream input) throws IOException;
+}
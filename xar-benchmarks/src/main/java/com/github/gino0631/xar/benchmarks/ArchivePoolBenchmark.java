@@ -0,0 +1,79 @@
+package com.github.gino0631.xar.benchmarks;
+
+import com.github.gino0631.xar.EncodingAlgorithm;
+import com.github.gino0631.xar.XarArchive;
+import com.github.gino0631.xar.XarArchivePool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares serving reads from a set of archives with a skewed access pattern by loading an archive for every read,
+ * and by leasing it from a pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ArchivePoolBenchmark {
+    private static final int ARCHIVE_COUNT = 200;
+
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    private final Path[] files = new Path[ARCHIVE_COUNT];
+    private final Random random = new Random(1);
+    private final byte[] buf = new byte[8192];
+    private XarArchivePool pool;
+
+    @Setup
+    public void setUp() throws IOException {
+        for (int i = 0; i < files.length; i++) {
+            files[i] = BenchmarkArchives.create(100, 1024, EncodingAlgorithm.ZLIB);
+        }
+
+        pool = XarArchivePool.create(ARCHIVE_COUNT / 4);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.close();
+
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Benchmark
+    public void read(Blackhole bh) throws IOException {
+        // Most reads go to a few archives, the rest to the long tail
+        Path file = files[(int) (Math.abs(random.nextGaussian()) * ARCHIVE_COUNT / 8) % ARCHIVE_COUNT];
+
+        if (pooled) {
+            try (XarArchivePool.Lease lease = pool.acquire(file)) {
+                read(lease.getArchive(), bh);
+            }
+
+        } else {
+            try (XarArchive xar = XarArchive.load(file)) {
+                read(xar, bh);
+            }
+        }
+    }
+
+    private void read(XarArchive xar, Blackhole bh) throws IOException {
+        try (InputStream is = xar.getEntry("files/file-" + random.nextInt(100)).newInputStream()) {
+            for (int n; (n = is.read(buf)) >= 0; ) {
+                bh.consume(n);
+            }
+        }
+    }
+}
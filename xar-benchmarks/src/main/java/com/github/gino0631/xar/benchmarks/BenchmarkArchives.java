@@ -0,0 +1,53 @@
+package com.github.gino0631.xar.benchmarks;
+
+import com.github.gino0631.xar.EncodingAlgorithm;
+import com.github.gino0631.xar.XarArchive;
+import com.github.gino0631.xar.XarBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Synthetic archives used by the benchmarks.
+ */
+final class BenchmarkArchives {
+    private BenchmarkArchives() {
+    }
+
+    /**
+     * Creates an archive file containing files of pseudo-random, moderately compressible content.
+     *
+     * @param fileCount number of files
+     * @param fileSize  size of each file
+     * @param encoding  encoding of the files
+     * @return path of a temporary file, which should be deleted by the caller
+     * @throws IOException if an I/O error occurs
+     */
+    static Path create(int fileCount, int fileSize, EncodingAlgorithm encoding) throws IOException {
+        Path file = Files.createTempFile("xar-bench-", ".xar");
+        Random random = new Random(fileCount ^ fileSize);
+        byte[] data = new byte[fileSize];
+
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            XarBuilder.Directory dir = xarBuilder.getRoot().addDirectory("files");
+
+            for (int i = 0; i < fileCount; i++) {
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = (byte) ('a' + random.nextInt(16));
+                }
+
+                dir.addFile("file-" + i, encoding, new ByteArrayInputStream(data));
+            }
+
+            try (XarArchive xar = xarBuilder.build(); OutputStream os = Files.newOutputStream(file)) {
+                xar.writeTo(os);
+            }
+        }
+
+        return file;
+    }
+}
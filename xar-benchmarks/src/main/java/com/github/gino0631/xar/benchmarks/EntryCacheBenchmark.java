@@ -0,0 +1,54 @@
+package com.github.gino0631.xar.benchmarks;
+
+import com.github.gino0631.xar.EncodingAlgorithm;
+import com.github.gino0631.xar.EntryCache;
+import com.github.gino0631.xar.XarArchive;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares repeated reads of a small compressed entry with and without an entry cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EntryCacheBenchmark {
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private Path file;
+    private XarArchive xar;
+    private XarArchive.Entry entry;
+    private final byte[] buf = new byte[8192];
+
+    @Setup
+    public void setUp() throws IOException {
+        file = BenchmarkArchives.create(1, 16 * 1024, EncodingAlgorithm.ZLIB);
+        xar = cached ? XarArchive.load(file, EntryCache.create(1024 * 1024, 64 * 1024)) : XarArchive.load(file);
+        entry = xar.getEntry("files/file-0");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        xar.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void read(Blackhole bh) throws IOException {
+        try (InputStream is = entry.newInputStream()) {
+            for (int n; (n = is.read(buf)) >= 0; ) {
+                bh.consume(n);
+            }
+        }
+    }
+}
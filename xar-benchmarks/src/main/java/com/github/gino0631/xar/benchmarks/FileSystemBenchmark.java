@@ -0,0 +1,78 @@
+package com.github.gino0631.xar.benchmarks;
+
+import com.github.gino0631.xar.EncodingAlgorithm;
+import com.github.gino0631.xar.XarArchive;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares concurrent random reads of a stored entry through the XAR file system with reads of the same data
+ * extracted to a file of the default file system.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(4)
+@Fork(1)
+public class FileSystemBenchmark {
+    private static final int FILE_SIZE = 16 * 1024 * 1024;
+    private static final int READ_SIZE = 4096;
+
+    @Param({"extracted", "xar"})
+    public String mode;
+
+    private Path file;
+    private Path extractedFile;
+    private FileSystem fileSystem;
+    private Path path;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final ByteBuffer buf = ByteBuffer.allocate(READ_SIZE);
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        file = BenchmarkArchives.create(1, FILE_SIZE, EncodingAlgorithm.NONE);
+        extractedFile = Files.createTempFile("xar-bench-", ".bin");
+
+        try (XarArchive xar = XarArchive.load(file); InputStream is = xar.getEntry("files/file-0").newInputStream()) {
+            Files.copy(is, extractedFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        fileSystem = FileSystems.newFileSystem(URI.create("xar:" + file.toUri()), Collections.emptyMap());
+        path = mode.equals("xar") ? fileSystem.getPath("/files/file-0") : extractedFile;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fileSystem.close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(extractedFile);
+    }
+
+    @Benchmark
+    public int read(ThreadState state) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+            state.buf.clear();
+            channel.position(ThreadLocalRandom.current().nextInt(FILE_SIZE - READ_SIZE));
+
+            return channel.read(state.buf);
+        }
+    }
+}
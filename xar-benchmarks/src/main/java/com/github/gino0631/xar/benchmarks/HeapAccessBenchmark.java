@@ -0,0 +1,83 @@
+package com.github.gino0631.xar.benchmarks;
+
+import com.github.gino0631.xar.EncodingAlgorithm;
+import com.github.gino0631.xar.StandardLoadOption;
+import com.github.gino0631.xar.XarArchive;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading all entries of an archive through the available heap access modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HeapAccessBenchmark {
+    @Param({"NONE", "ZLIB"})
+    public EncodingAlgorithm encoding;
+
+    @Param({"stream", "channel", "mmap"})
+    public String mode;
+
+    private Path file;
+    private XarArchive xar;
+    private final byte[] buf = new byte[8192];
+
+    @Setup
+    public void setUp() throws IOException {
+        file = BenchmarkArchives.create(2000, 16 * 1024, encoding);
+
+        switch (mode) {
+            case "stream":
+                xar = XarArchive.load(() -> Files.newInputStream(file));
+                break;
+
+            case "channel":
+                xar = XarArchive.load(file);
+                break;
+
+            case "mmap":
+                xar = XarArchive.load(file, StandardLoadOption.MEMORY_MAP);
+                break;
+
+            default:
+                throw new IllegalArgumentException(mode);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        xar.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void readAll(Blackhole bh) throws IOException {
+        read(xar.getEntries(), bh);
+    }
+
+    private void read(List<XarArchive.Entry> entries, Blackhole bh) throws IOException {
+        for (XarArchive.Entry e : entries) {
+            if (e.isDirectory()) {
+                read(e.getEntries(), bh);
+
+            } else {
+                try (InputStream is = e.newInputStream()) {
+                    for (int n; (n = is.read(buf)) >= 0; ) {
+                        bh.consume(n);
+                    }
+                }
+            }
+        }
+    }
+}
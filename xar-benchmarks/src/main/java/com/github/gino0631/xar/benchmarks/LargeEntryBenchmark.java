@@ -0,0 +1,54 @@
+package com.github.gino0631.xar.benchmarks;
+
+import com.github.gino0631.xar.EncodingAlgorithm;
+import com.github.gino0631.xar.StandardLoadOption;
+import com.github.gino0631.xar.XarArchive;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares extraction of a single large compressed entry with and without reading ahead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LargeEntryBenchmark {
+    @Param({"false", "true"})
+    public boolean readAhead;
+
+    private Path file;
+    private XarArchive xar;
+    private XarArchive.Entry entry;
+    private final byte[] buf = new byte[8192];
+
+    @Setup
+    public void setUp() throws IOException {
+        file = BenchmarkArchives.create(1, 64 * 1024 * 1024, EncodingAlgorithm.ZLIB);
+        xar = readAhead ? XarArchive.load(file, StandardLoadOption.READ_AHEAD) : XarArchive.load(file);
+        entry = xar.getEntry("files/file-0");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        xar.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void extract(Blackhole bh) throws IOException {
+        try (InputStream is = entry.newInputStream()) {
+            for (int n; (n = is.read(buf)) >= 0; ) {
+                bh.consume(n);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.gino0631.xar.benchmarks;
+
+import com.github.gino0631.xar.EncodingAlgorithm;
+import com.github.gino0631.xar.StandardLoadOption;
+import com.github.gino0631.xar.XarArchive;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares inflating memory-mapped entries directly from buffers (the Java 11 variant of the multi-release JAR)
+ * with the stream-based path used on Java 8, which is forced by disabling multi-release JAR support.
+ * <p>
+ * Run with {@code -prof gc} to see the difference in allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MappedInflateBenchmark {
+    private Path file;
+    private XarArchive xar;
+    private final byte[] buf = new byte[8192];
+
+    @Setup
+    public void setUp() throws IOException {
+        file = BenchmarkArchives.create(500, 128 * 1024, EncodingAlgorithm.ZLIB);
+        xar = XarArchive.load(file, StandardLoadOption.MEMORY_MAP);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        xar.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void buffers(Blackhole bh) throws IOException {
+        readAll(bh);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Djdk.util.jar.enableMultiRelease=false")
+    public void streams(Blackhole bh) throws IOException {
+        readAll(bh);
+    }
+
+    private void readAll(Blackhole bh) throws IOException {
+        for (XarArchive.Entry e : xar.entriesInHeapOrder()) {
+            try (InputStream is = e.newInputStream()) {
+                for (int n; (n = is.read(buf)) >= 0; ) {
+                    bh.consume(n);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.gino0631.xar.benchmarks;
+
+import com.github.gino0631.xar.EncodingAlgorithm;
+import com.github.gino0631.xar.XarArchive;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading the last 64 KiB of a large compressed entry with and without a seek index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SeekIndexBenchmark {
+    static final int SIZE = 64 * 1024 * 1024;
+    static final int TAIL = 64 * 1024;
+
+    @Param({"0", "1048576"})
+    public long span;
+
+    private Path file;
+    private XarArchive xar;
+    private XarArchive.Entry entry;
+    private final byte[] buf = new byte[8192];
+
+    @Setup
+    public void setUp() throws IOException {
+        file = BenchmarkArchives.create(1, SIZE, EncodingAlgorithm.ZLIB);
+        xar = XarArchive.load(file);
+        entry = xar.getEntry("files/file-0");
+
+        if (span > 0) {
+            entry.createSeekIndex(span);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        xar.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void readTail(Blackhole bh) throws IOException {
+        try (InputStream is = entry.newInputStream(SIZE - TAIL)) {
+            for (int n; (n = is.read(buf)) >= 0; ) {
+                bh.consume(n);
+            }
+        }
+    }
+}
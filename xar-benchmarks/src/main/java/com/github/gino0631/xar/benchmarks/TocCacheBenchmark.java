@@ -0,0 +1,63 @@
+package com.github.gino0631.xar.benchmarks;
+
+import com.github.gino0631.xar.EncodingAlgorithm;
+import com.github.gino0631.xar.TocCache;
+import com.github.gino0631.xar.XarArchive;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reopening an archive with many entries with and without a ToC cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TocCacheBenchmark {
+    @Param({"false", "true"})
+    public boolean cached;
+
+    @Param({"50000"})
+    public int fileCount;
+
+    private Path file;
+    private Path cacheDir;
+    private XarArchive.LoadOption[] options;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = BenchmarkArchives.create(fileCount, 16, EncodingAlgorithm.NONE);
+        cacheDir = Files.createTempDirectory("xar-bench-toc-");
+        options = cached ? new XarArchive.LoadOption[]{TocCache.in(cacheDir)} : new XarArchive.LoadOption[0];
+
+        // Populate the cache
+        XarArchive.load(file, options).close();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(cacheDir)) {
+            for (Path p : ds) {
+                Files.delete(p);
+            }
+        }
+
+        Files.delete(cacheDir);
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        try (XarArchive xar = XarArchive.load(file, options)) {
+            return xar.getEntries().size();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.ChecksumAlgorithm;
+import com.github.gino0631.xar.EncodingAlgorithm;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compares the fused {@link XarInputStream} with the stack of decorator streams it replaced, on in-memory entry data.
+ * <p>
+ * Each operation reads {@link #SIZE} bytes, so bytes per second are 16 MiB times the score; run with {@code -prof gc}
+ * and divide {@code gc.alloc.rate.norm} by 16 to get allocations per MiB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReadPipelineBenchmark {
+    static final int SIZE = 16 * 1024 * 1024;
+
+    @Param({"NONE", "ZLIB"})
+    public EncodingAlgorithm encoding;
+
+    @Param({"64", "8192"})
+    public int readSize;
+
+    private byte[] archived;
+    private byte[] buf;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(SIZE);
+        byte[] data = new byte[SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(16));
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = encoding.getEncoder(bos)) {
+            os.write(data);
+        }
+
+        archived = bos.toByteArray();
+        buf = new byte[readSize];
+    }
+
+    @Benchmark
+    public void fused(Blackhole bh) throws IOException {
+        read(new XarInputStream(new ByteArrayInputStream(archived), encoding,
+                ChecksumAlgorithm.SHA1, null, ChecksumAlgorithm.SHA1, null), bh);
+    }
+
+    @Benchmark
+    public void decorators(Blackhole bh) throws IOException {
+        InputStream is = new DigestInputStream(new ByteArrayInputStream(archived), ChecksumAlgorithm.SHA1.getInstance());
+        if (encoding == EncodingAlgorithm.ZLIB) {
+            is = new InflaterInputStream(is);
+        }
+
+        read(new DigestInputStream(is, ChecksumAlgorithm.SHA1.getInstance()), bh);
+    }
+
+    private void read(InputStream input, Blackhole bh) throws IOException {
+        try (InputStream is = input) {
+            for (int n; (n = is.read(buf)) >= 0; ) {
+                bh.consume(n);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.impl.jaxb.ObjectFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building of the entry table by {@link TocReader} and through JAXB on a synthetic ToC.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TocParseBenchmark {
+    @Param({"1000000"})
+    public int entryCount;
+
+    private byte[] xml;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder(entryCount * 600);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<xar>\n <toc>\n");
+        sb.append("  <creation-time>2017-05-07T14:46:13Z</creation-time>\n");
+        sb.append("  <checksum style=\"sha1\">\n   <offset>0</offset>\n   <size>20</size>\n  </checksum>\n");
+
+        long id = 0;
+        long offset = 20;
+        int filesPerDirectory = 1000;
+
+        for (int d = 0; d * filesPerDirectory < entryCount; d++) {
+            sb.append("  <file id=\"").append(++id).append("\">\n   <name>dir-").append(d).append("</name>\n   <type>directory</type>\n");
+            sb.append("   <mode>0755</mode>\n   <uid>0</uid>\n   <user>root</user>\n");
+
+            for (int f = 0; (f < filesPerDirectory) && (d * filesPerDirectory + f < entryCount); f++) {
+                sb.append("   <file id=\"").append(++id).append("\">\n");
+                sb.append("    <data>\n");
+                sb.append("     <length>100</length>\n     <offset>").append(offset).append("</offset>\n     <size>200</size>\n");
+                sb.append("     <encoding style=\"application/x-gzip\"/>\n");
+                sb.append("     <archived-checksum style=\"sha1\">4ed1f3ae9a1b2c3d4e5f60718293a4b5c6d7e8f9</archived-checksum>\n");
+                sb.append("     <extracted-checksum style=\"sha1\">0123456789abcdef0123456789abcdef01234567</extracted-checksum>\n");
+                sb.append("    </data>\n");
+                sb.append("    <mode>0644</mode>\n    <uid>0</uid>\n    <user>root</user>\n    <mtime>2017-05-07T14:46:13Z</mtime>\n");
+                sb.append("    <name>file-").append(f).append(".plist</name>\n    <type>file</type>\n");
+                sb.append("   </file>\n");
+                offset += 100;
+            }
+
+            sb.append("  </file>\n");
+        }
+
+        sb.append(" </toc>\n</xar>\n");
+        xml = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Object jaxb() throws IOException {
+        return EntryTable.of(ObjectFactory.unmarshal(new ByteArrayInputStream(xml)).getToc());
+    }
+
+    @Benchmark
+    public Object stax() throws IOException {
+        EntryTable.Builder builder = new EntryTable.Builder();
+        TocReader.read(new ByteArrayInputStream(xml), builder);
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.common.io.IoStreams;
+import com.github.gino0631.xar.ChecksumAlgorithm;
+import com.github.gino0631.xar.EncodingAlgorithm;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Compares the fused {@link XarOutputStream} with the stack of decorator streams it replaced, writing to a discarding
+ * stream in chunks of different sizes.
+ * <p>
+ * Each operation writes {@link #SIZE} bytes; run with {@code -prof gc} to see allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WritePipelineBenchmark {
+    static final int SIZE = 4 * 1024 * 1024;
+
+    @Param({"NONE", "ZLIB"})
+    public EncodingAlgorithm encoding;
+
+    @Param({"1", "4096", "1048576"})
+    public int writeSize;
+
+    private byte[] data;
+
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(SIZE);
+        data = new byte[SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(16));
+        }
+    }
+
+    @Benchmark
+    public long fused() throws IOException {
+        XarOutputStream xos = new XarOutputStream(NULL_OUTPUT, encoding,
+                ChecksumAlgorithm.SHA1, null, ChecksumAlgorithm.SHA1, null);
+        write(xos);
+
+        return xos.getArchivedSize();
+    }
+
+    @Benchmark
+    public long decorators() throws IOException {
+        AtomicLong archivedSize = new AtomicLong();
+        AtomicLong extractedSize = new AtomicLong();
+
+        OutputStream os = IoStreams.count(NULL_OUTPUT, archivedSize::addAndGet);
+        os = new DigestOutputStream(os, ChecksumAlgorithm.SHA1.getInstance());
+        if (encoding == EncodingAlgorithm.ZLIB) {
+            os = new DeflaterOutputStream(os);
+        }
+
+        os = new DigestOutputStream(os, ChecksumAlgorithm.SHA1.getInstance());
+        write(IoStreams.count(os, extractedSize::addAndGet));
+
+        return archivedSize.get() + extractedSize.get();
+    }
+
+    private void write(OutputStream output) throws IOException {
+        try (OutputStream os = output) {
+            if (writeSize == 1) {
+                for (byte b : data) {
+                    os.write(b);
+                }
+
+            } else {
+                for (int off = 0; off < data.length; off += writeSize) {
+                    os.write(data, off, Math.min(writeSize, data.length - off));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.gino0631.xar.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Stream which inflates data of a {@link ByteBufferInput} from its buffers.
+ * <p>
+ * {@code Inflater} only accepts arrays before Java 11, so compressed data is copied from the buffers into a pooled
+ * array, and digested there. The Java 11 variant of the multi-release JAR inflates the buffers directly.
+ */
+final class BufferInflaterInputStream extends InputStream {
+    private final ByteBufferInput input;
+    private final Inflater inflater;
+    private final MessageDigest messageDigest;
+    private final byte[] singleByte = new byte[1];
+    private byte[] inputBuffer = CodecPool.acquireBuffer();
+    private boolean eof;
+    private boolean closed;
+
+    BufferInflaterInputStream(ByteBufferInput input, Inflater inflater, MessageDigest messageDigest) {
+        this.input = input;
+        this.inflater = inflater;
+        this.messageDigest = messageDigest;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return (read(singleByte, 0, 1) == 1) ? singleByte[0] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        while (!eof) {
+            int n;
+            try {
+                n = inflater.inflate(b, off, len);
+
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+
+            if (n > 0) {
+                return n;
+            }
+
+            if (inflater.finished() || inflater.needsDictionary()) {
+                eof = true;
+
+            } else if (inflater.needsInput()) {
+                ByteBuffer buf = input.readBuffer(inputBuffer.length);
+                if (buf == null) {
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+
+                int cnt = buf.remaining();
+                buf.get(inputBuffer, 0, cnt);
+
+                if (messageDigest != null) {
+                    messageDigest.update(inputBuffer, 0, cnt);
+                }
+
+                inflater.setInput(inputBuffer, 0, cnt);
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        return eof ? 0 : 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+
+            try {
+                input.close();
+
+            } finally {
+                // The inflater may still refer to the array, but it is not used any more
+                CodecPool.releaseBuffer(inputBuffer);
+                inputBuffer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.gino0631.xar.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Input which can provide its data as buffers, without copying it to the heap.
+ */
+interface ByteBufferInput extends Closeable {
+    /**
+     * Reads the next portion of data.
+     *
+     * @param maxLength maximum number of bytes to return
+     * @return a buffer positioned at the data, or {@code null} if the end has been reached
+     * @throws IOException if an I/O error occurs
+     */
+    ByteBuffer readBuffer(int maxLength) throws IOException;
+}
@@ -0,0 +1,137 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.CodecPoolStatistics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Bounded pools of zlib codecs, which hold native memory and are costly to create for every entry, and of their
+ * buffers.
+ * <p>
+ * Codecs are reset when released; codecs which do not fit into a pool are ended immediately.
+ */
+final class CodecPool {
+    static final int POOL_SIZE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> rawInflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final LongAdder inflaterHits = new LongAdder();
+    private static final LongAdder inflaterMisses = new LongAdder();
+    private static final LongAdder deflaterHits = new LongAdder();
+    private static final LongAdder deflaterMisses = new LongAdder();
+
+    static final CodecPoolStatistics STATISTICS = new CodecPoolStatistics() {
+        @Override
+        public long getInflaterHits() {
+            return inflaterHits.sum();
+        }
+
+        @Override
+        public long getInflaterMisses() {
+            return inflaterMisses.sum();
+        }
+
+        @Override
+        public long getDeflaterHits() {
+            return deflaterHits.sum();
+        }
+
+        @Override
+        public long getDeflaterMisses() {
+            return deflaterMisses.sum();
+        }
+    };
+
+    private CodecPool() {
+    }
+
+    static Inflater acquireInflater() {
+        Inflater inflater = inflaters.poll();
+        if (inflater != null) {
+            inflaterHits.increment();
+
+        } else {
+            inflaterMisses.increment();
+            inflater = new Inflater();
+        }
+
+        return inflater;
+    }
+
+    static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+
+        if (!inflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Gets an inflater of raw deflate data, i.e. without zlib header and trailer.
+     *
+     * @return a pooled or a new inflater
+     */
+    static Inflater acquireRawInflater() {
+        Inflater inflater = rawInflaters.poll();
+        if (inflater != null) {
+            inflaterHits.increment();
+
+        } else {
+            inflaterMisses.increment();
+            inflater = new Inflater(true);
+        }
+
+        return inflater;
+    }
+
+    static void releaseRawInflater(Inflater inflater) {
+        inflater.reset();
+
+        if (!rawInflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    static Deflater acquireDeflater() {
+        Deflater deflater = deflaters.poll();
+        if (deflater != null) {
+            deflaterHits.increment();
+
+        } else {
+            deflaterMisses.increment();
+            deflater = new Deflater();
+        }
+
+        return deflater;
+    }
+
+    static void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Gets a buffer of {@link #BUFFER_SIZE} bytes for compressed data.
+     *
+     * @return a pooled or a new buffer
+     */
+    static byte[] acquireBuffer() {
+        byte[] buffer = buffers.poll();
+
+        return (buffer != null) ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    static void releaseBuffer(byte[] buffer) {
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.CodecPoolStatistics;
+import com.github.gino0631.xar.spi.CodecPoolStatisticsSpi;
+
+public final class CodecPoolStatisticsSpiImpl implements CodecPoolStatisticsSpi {
+    @Override
+    public CodecPoolStatistics getInstance() {
+        return CodecPool.STATISTICS;
+    }
+}
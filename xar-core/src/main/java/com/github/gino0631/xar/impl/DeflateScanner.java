@@ -0,0 +1,382 @@
+package com.github.gino0631.xar.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.zip.ZipException;
+
+/**
+ * Decoder of raw deflate data (RFC 1951), which reports where each block starts, at bit granularity.
+ * <p>
+ * {@link java.util.zip.Inflater} does not expose block boundaries, which are the only places where decoding can be
+ * resumed, so this decoder is used to find them; decoded data is not returned, only kept in the sliding window.
+ */
+final class DeflateScanner {
+    static final int WINDOW_SIZE = 32 * 1024;
+
+    private static final int MAX_BITS = 15;
+    private static final int[] LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DISTANCE_BASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769,
+            1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DISTANCE_EXTRA = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final Huffman FIXED_LITERALS;
+    private static final Huffman FIXED_DISTANCES;
+
+    static {
+        int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+
+        try {
+            FIXED_LITERALS = new Huffman();
+            FIXED_LITERALS.build(lengths, 0, 288);
+
+            Arrays.fill(lengths, 0, 30, 5);
+            FIXED_DISTANCES = new Huffman();
+            FIXED_DISTANCES.build(lengths, 0, 30);
+
+        } catch (ZipException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final InputStream inputStream;
+    private final MessageDigest messageDigest;
+    private final byte[] inputBuffer;
+    private int inputPos;
+    private int inputLength;
+    private long bytesRead;
+    private long bitBuffer;
+    private int bitCount;
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private int windowPos;
+    private int digestPos;
+    private long outputSize;
+
+    /**
+     * Listener of block boundaries.
+     */
+    @FunctionalInterface
+    interface BlockListener {
+        /**
+         * Called before a block is decoded.
+         *
+         * @param scanner     the scanner, positioned at the start of the block
+         * @param bitPosition position of the block in the input, in bits
+         * @param outputSize  number of bytes decoded so far
+         * @throws IOException if an I/O error occurs
+         */
+        void blockStart(DeflateScanner scanner, long bitPosition, long outputSize) throws IOException;
+    }
+
+    /**
+     * Canonical Huffman code, decoded by a single lookup in a table indexed by the next (bit-reversed) input bits.
+     */
+    private static final class Huffman {
+        private int[] table = new int[1];   // entries are (symbol << 4) | length, or 0 for invalid codes
+        private int bits;
+
+        void build(int[] lengths, int off, int count) throws ZipException {
+            int[] counts = new int[MAX_BITS + 1];
+            int maxLength = 0;
+            for (int i = 0; i < count; i++) {
+                counts[lengths[off + i]]++;
+                maxLength = Math.max(maxLength, lengths[off + i]);
+            }
+
+            // Check that the code is not over-subscribed
+            int left = 1;
+            for (int len = 1; len <= MAX_BITS; len++) {
+                left = (left << 1) - counts[len];
+                if (left < 0) {
+                    throw new ZipException("Invalid Huffman code lengths");
+                }
+            }
+
+            int[] nextCode = new int[MAX_BITS + 1];
+            counts[0] = 0;
+            for (int len = 1, code = 0; len <= MAX_BITS; len++) {
+                code = (code + counts[len - 1]) << 1;
+                nextCode[len] = code;
+            }
+
+            int size = 1 << maxLength;
+            if (table.length < size) {
+                table = new int[size];
+
+            } else {
+                Arrays.fill(table, 0, size, 0);
+            }
+
+            bits = maxLength;
+
+            for (int i = 0; i < count; i++) {
+                int len = lengths[off + i];
+                if (len > 0) {
+                    int code = Integer.reverse(nextCode[len]++) >>> (32 - len);
+                    for (int j = code; j < size; j += 1 << len) {
+                        table[j] = (i << 4) | len;
+                    }
+                }
+            }
+        }
+    }
+
+    DeflateScanner(InputStream is, MessageDigest messageDigest, byte[] inputBuffer) {
+        this.inputStream = is;
+        this.messageDigest = messageDigest;
+        this.inputBuffer = inputBuffer;
+    }
+
+    /**
+     * Gets the sliding window, i.e. up to {@link #WINDOW_SIZE} last decoded bytes.
+     *
+     * @return a new array
+     */
+    byte[] getWindow() {
+        if (outputSize < WINDOW_SIZE) {
+            return Arrays.copyOf(window, windowPos);
+
+        } else {
+            byte[] result = new byte[WINDOW_SIZE];
+            System.arraycopy(window, windowPos, result, 0, WINDOW_SIZE - windowPos);
+            System.arraycopy(window, 0, result, WINDOW_SIZE - windowPos, windowPos);
+
+            return result;
+        }
+    }
+
+    /**
+     * Decodes the deflate data up to the end of its last block.
+     *
+     * @param listener listener of block boundaries
+     * @return number of decoded bytes
+     * @throws IOException if an I/O error occurs, or if the data is invalid
+     */
+    long scan(BlockListener listener) throws IOException {
+        Huffman literals = new Huffman();
+        Huffman distances = new Huffman();
+        boolean last;
+
+        do {
+            listener.blockStart(this, (bytesRead << 3) - bitCount, outputSize);
+
+            last = (bits(1) == 1);
+            switch (bits(2)) {
+                case 0:
+                    stored();
+                    break;
+
+                case 1:
+                    codes(FIXED_LITERALS, FIXED_DISTANCES);
+                    break;
+
+                case 2:
+                    dynamic(literals, distances);
+                    codes(literals, distances);
+                    break;
+
+                default:
+                    throw new ZipException("Invalid block type");
+            }
+        } while (!last);
+
+        if (messageDigest != null) {
+            messageDigest.update(window, digestPos, windowPos - digestPos);
+            digestPos = windowPos;
+        }
+
+        return outputSize;
+    }
+
+    private void stored() throws IOException {
+        // Discard the rest of the current byte
+        bits(bitCount & 7);
+
+        int len = bits(16);
+        if (len != (~bits(16) & 0xffff)) {
+            throw new ZipException("Invalid stored block lengths");
+        }
+
+        for (; len > 0; len--) {
+            output((bitCount > 0) ? (byte) bits(8) : nextByte());
+        }
+    }
+
+    private void dynamic(Huffman literals, Huffman distances) throws IOException {
+        int literalCount = bits(5) + 257;
+        int distanceCount = bits(5) + 1;
+        int codeLengthCount = bits(4) + 4;
+        if ((literalCount > 286) || (distanceCount > 30)) {
+            throw new ZipException("Too many length or distance symbols");
+        }
+
+        int[] lengths = new int[literalCount + distanceCount];
+        int[] codeLengths = new int[19];
+        for (int i = 0; i < codeLengthCount; i++) {
+            codeLengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+
+        Huffman codeLengthCode = new Huffman();
+        codeLengthCode.build(codeLengths, 0, 19);
+
+        for (int i = 0; i < lengths.length; ) {
+            int symbol = decode(codeLengthCode);
+            if (symbol < 16) {
+                lengths[i++] = symbol;
+
+            } else {
+                int len = 0;
+                int repeat;
+
+                if (symbol == 16) {
+                    if (i == 0) {
+                        throw new ZipException("Invalid bit length repeat");
+                    }
+
+                    len = lengths[i - 1];
+                    repeat = 3 + bits(2);
+
+                } else if (symbol == 17) {
+                    repeat = 3 + bits(3);
+
+                } else {
+                    repeat = 11 + bits(7);
+                }
+
+                if (i + repeat > lengths.length) {
+                    throw new ZipException("Invalid bit length repeat");
+                }
+
+                Arrays.fill(lengths, i, i + repeat, len);
+                i += repeat;
+            }
+        }
+
+        if (lengths[256] == 0) {
+            throw new ZipException("Invalid code -- missing end-of-block");
+        }
+
+        literals.build(lengths, 0, literalCount);
+        distances.build(lengths, literalCount, distanceCount);
+    }
+
+    private void codes(Huffman literals, Huffman distances) throws IOException {
+        for (int symbol; (symbol = decode(literals)) != 256; ) {
+            if (symbol < 256) {
+                output((byte) symbol);
+
+            } else {
+                symbol -= 257;
+                if (symbol >= LENGTH_BASE.length) {
+                    throw new ZipException("Invalid literal/length code");
+                }
+
+                int len = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+
+                symbol = decode(distances);
+                if (symbol >= DISTANCE_BASE.length) {
+                    throw new ZipException("Invalid distance code");
+                }
+
+                int dist = DISTANCE_BASE[symbol] + bits(DISTANCE_EXTRA[symbol]);
+                if (dist > Math.min(outputSize, WINDOW_SIZE)) {
+                    throw new ZipException("Invalid distance too far back");
+                }
+
+                for (int src = (windowPos - dist) & (WINDOW_SIZE - 1); len > 0; len--) {
+                    output(window[src]);
+                    src = (src + 1) & (WINDOW_SIZE - 1);
+                }
+            }
+        }
+    }
+
+    private void output(byte b) {
+        window[windowPos++] = b;
+        outputSize++;
+
+        if (windowPos == WINDOW_SIZE) {
+            if (messageDigest != null) {
+                messageDigest.update(window, digestPos, WINDOW_SIZE - digestPos);
+            }
+
+            windowPos = 0;
+            digestPos = 0;
+        }
+    }
+
+    private int decode(Huffman huffman) throws IOException {
+        // Codes may be shorter than the table index, so running out of input is only an error if the code is incomplete
+        while (bitCount < huffman.bits) {
+            if ((inputPos == inputLength) && !fill()) {
+                break;
+            }
+
+            bitBuffer |= (long) (inputBuffer[inputPos++] & 0xff) << bitCount;
+            bitCount += 8;
+            bytesRead++;
+        }
+
+        int entry = huffman.table[(int) bitBuffer & ((1 << huffman.bits) - 1)];
+        int len = entry & 15;
+        if (len == 0) {
+            throw new ZipException("Invalid Huffman code");
+        }
+
+        if (len > bitCount) {
+            throw new EOFException("Unexpected end of deflate stream");
+        }
+
+        bitBuffer >>>= len;
+        bitCount -= len;
+
+        return entry >>> 4;
+    }
+
+    private int bits(int n) throws IOException {
+        while (bitCount < n) {
+            bitBuffer |= (long) (nextByte() & 0xff) << bitCount;
+            bitCount += 8;
+        }
+
+        int value = (int) bitBuffer & ((1 << n) - 1);
+        bitBuffer >>>= n;
+        bitCount -= n;
+
+        return value;
+    }
+
+    private byte nextByte() throws IOException {
+        if ((inputPos == inputLength) && !fill()) {
+            throw new EOFException("Unexpected end of deflate stream");
+        }
+
+        bytesRead++;
+
+        return inputBuffer[inputPos++];
+    }
+
+    private boolean fill() throws IOException {
+        int n = inputStream.read(inputBuffer, 0, inputBuffer.length);
+        if (n <= 0) {
+            return false;
+        }
+
+        inputPos = 0;
+        inputLength = n;
+
+        return true;
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.EntryCache;
+
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Entry cache, which is split into segments with separate locks and LRU lists, so that concurrent readers of different
+ * entries rarely contend.
+ * <p>
+ * The size budget is divided equally between the segments, and there are only as many segments as there are
+ * entries of the maximum size fitting into the budget, up to {@link #MAX_SEGMENTS}.
+ */
+final class EntryCacheImpl implements EntryCache {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final long maxSize;
+    private final long maxEntrySize;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static final class Key {
+        private final Object archive;
+        private final int entryIndex;
+
+        Key(Object archive, int entryIndex) {
+            this.archive = archive;
+            this.entryIndex = entryIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Key) && (((Key) o).entryIndex == entryIndex) && ((Key) o).archive.equals(archive);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * archive.hashCode() + entryIndex;
+        }
+    }
+
+    private final class Segment {
+        private final Map<Key, byte[]> map = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxSize;
+        private long size;
+
+        Segment(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        synchronized byte[] get(Key key) {
+            return map.get(key);
+        }
+
+        synchronized void put(Key key, byte[] data) {
+            byte[] old = map.put(key, data);
+            size += data.length - ((old != null) ? old.length : 0);
+
+            for (Iterator<byte[]> it = map.values().iterator(); (size > maxSize) && it.hasNext(); ) {
+                size -= it.next().length;
+                it.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized long size() {
+            return size;
+        }
+
+        synchronized void clear() {
+            map.clear();
+            size = 0;
+        }
+    }
+
+    EntryCacheImpl(long maxSize, long maxEntrySize) {
+        if ((maxSize < 0) || (maxEntrySize < 0)) {
+            throw new IllegalArgumentException(MessageFormat.format("Invalid cache sizes {0}, {1}", maxSize, maxEntrySize));
+        }
+
+        this.maxSize = maxSize;
+        this.maxEntrySize = Math.min(Math.min(maxEntrySize, maxSize), Integer.MAX_VALUE - 8);
+
+        long fit = (this.maxEntrySize > 0) ? maxSize / this.maxEntrySize : MAX_SEGMENTS;
+        int segmentCount = Integer.highestOneBit((int) Math.max(Math.min(fit, MAX_SEGMENTS), 1));
+
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maxSize / segmentCount);
+        }
+    }
+
+    @Override
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public long getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    @Override
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+
+        return size;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Gets cached data of an entry.
+     *
+     * @param archive    identity of the archive
+     * @param entryIndex index of the entry in the entry table, since IDs coming from the ToC may not be unique
+     * @return data, or {@code null} if the entry is not cached
+     */
+    byte[] get(Object archive, int entryIndex) {
+        Key key = new Key(Objects.requireNonNull(archive), entryIndex);
+        byte[] data = segment(key).get(key);
+
+        if (data != null) {
+            hits.increment();
+
+        } else {
+            misses.increment();
+        }
+
+        return data;
+    }
+
+    /**
+     * Caches data of an entry.
+     *
+     * @param archive    identity of the archive
+     * @param entryIndex index of the entry in the entry table
+     * @param data       decoded and verified data, which must not be modified afterwards
+     */
+    void put(Object archive, int entryIndex, byte[] data) {
+        if (data.length <= maxEntrySize) {
+            Key key = new Key(Objects.requireNonNull(archive), entryIndex);
+            segment(key).put(key, data);
+        }
+    }
+
+    private Segment segment(Key key) {
+        int h = key.hashCode();
+
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+}
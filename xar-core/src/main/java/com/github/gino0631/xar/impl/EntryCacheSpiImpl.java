@@ -0,0 +1,11 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.EntryCache;
+import com.github.gino0631.xar.spi.EntryCacheSpi;
+
+public final class EntryCacheSpiImpl implements EntryCacheSpi {
+    @Override
+    public EntryCache create(long maxSize, long maxEntrySize) {
+        return new EntryCacheImpl(maxSize, maxEntrySize);
+    }
+}
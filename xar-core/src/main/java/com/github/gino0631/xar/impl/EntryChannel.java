@@ -0,0 +1,119 @@
+package com.github.gino0631.xar.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.text.MessageFormat;
+
+/**
+ * Read-only channel bounded to a region of the source, which serves all reads as positional reads.
+ */
+final class EntryChannel implements SeekableByteChannel {
+    private final XarSource source;
+    private final long start;
+    private final long size;
+    private long position;
+    private volatile boolean open = true;
+
+    EntryChannel(XarSource source, long start, long size) {
+        this.source = source;
+        this.start = start;
+        this.size = size;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+
+        long remaining = size - position;
+        if (remaining <= 0) {
+            return -1;
+        }
+
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+
+        // Do not let the read go past the end of the region
+        int limit = dst.limit();
+        if (dst.remaining() > remaining) {
+            dst.limit(dst.position() + (int) remaining);
+        }
+
+        int n;
+        try {
+            n = source.read(start + position, dst);
+
+        } finally {
+            dst.limit(limit);
+        }
+
+        if (n < 0) {
+            throw new EOFException(MessageFormat.format("Stream should contain at least {0} bytes, but it does not", start + size));
+        }
+
+        position += n;
+
+        return n;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+
+        if (newPosition < 0) {
+            throw new IllegalArgumentException(MessageFormat.format("Negative position {0}", newPosition));
+        }
+
+        position = newPosition;
+
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        ensureOpen();
+
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
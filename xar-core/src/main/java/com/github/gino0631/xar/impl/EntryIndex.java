@@ -0,0 +1,270 @@
+package com.github.gino0631.xar.impl;
+
+import java.util.Arrays;
+
+/**
+ * Lookup index over an {@link EntryTable}.
+ * <p>
+ * Entries are hashed by parent and name, so paths are resolved one component at a time without building path strings,
+ * and identifiers are resolved through another open-addressing hash table. Prefix queries use an array of entry indexes
+ * sorted by path. The case-insensitive table and the sorted array are only built when first needed.
+ */
+final class EntryIndex {
+    private static final int EMPTY = 0;
+
+    private final EntryTable entryTable;
+    private final int[] childSlots;
+    private final int[] idSlots;
+    private final int mask;
+    private volatile int[] ignoreCaseSlots;
+    private volatile PathOrder pathOrder;
+
+    /**
+     * Entry indexes sorted by path, along with the paths.
+     */
+    private static final class PathOrder {
+        final int[] indexes;
+        final String[] paths;
+
+        PathOrder(int[] indexes, String[] paths) {
+            this.indexes = indexes;
+            this.paths = paths;
+        }
+    }
+
+    EntryIndex(EntryTable entryTable) {
+        this.entryTable = entryTable;
+
+        int size = entryTable.size();
+        int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+        mask = capacity - 1;
+
+        // Slots hold entry index + 1, so that 0 means an empty slot; entries with equal keys follow in index order
+        childSlots = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            insert(childSlots, i, getName(i).hashCode());
+        }
+
+        idSlots = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            long id = entryTable.getId(i);
+            int slot = mix(Long.hashCode(id)) & mask;
+            for (; idSlots[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (entryTable.getId(idSlots[slot] - 1) == id) {
+                    break;
+                }
+            }
+
+            if (idSlots[slot] == EMPTY) {
+                idSlots[slot] = i + 1;
+            }
+        }
+    }
+
+    String getPath(int index) {
+        return entryTable.getPath(index);
+    }
+
+    /**
+     * Gets the name of an entry as it appears in its path, where a missing name is shown as "null".
+     */
+    private String getName(int index) {
+        return String.valueOf(entryTable.getName(index));
+    }
+
+    /**
+     * Finds an entry by path.
+     *
+     * @param path       path of the entry, starting with "/"
+     * @param ignoreCase whether to ignore case differences when comparing paths
+     * @return index of the entry, or {@link EntryTable#NONE} if not found
+     */
+    int findByPath(String path, boolean ignoreCase) {
+        if (!path.startsWith("/")) {
+            return EntryTable.NONE;
+        }
+
+        return find(ignoreCase ? getIgnoreCaseSlots() : childSlots, EntryTable.NONE, path, 1, ignoreCase);
+    }
+
+    /**
+     * Finds an entry by identifier.
+     *
+     * @param id identifier of the entry
+     * @return index of the entry, or {@link EntryTable#NONE} if not found
+     */
+    int findById(long id) {
+        for (int slot = mix(Long.hashCode(id)) & mask; idSlots[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (entryTable.getId(idSlots[slot] - 1) == id) {
+                return idSlots[slot] - 1;
+            }
+        }
+
+        return EntryTable.NONE;
+    }
+
+    /**
+     * Finds all entries located under the specified path.
+     *
+     * @param path path of the parent entry, starting with "/"
+     * @return indexes of the entries, in the order of their paths
+     */
+    int[] findUnder(String path) {
+        String prefix = path.endsWith("/") ? path : path + "/";
+        PathOrder order = getPathOrder();
+
+        int from = lowerBound(order.paths, prefix);
+        int to = from;
+        while ((to < order.paths.length) && order.paths[to].startsWith(prefix)) {
+            to++;
+        }
+
+        return Arrays.copyOfRange(order.indexes, from, to);
+    }
+
+    /**
+     * Resolves the remainder of a path under the specified parent.
+     * <p>
+     * If several entries match a component (e.g. when ignoring case), each of them is tried in turn, so the result is the
+     * same as of comparing full paths.
+     */
+    private int find(int[] slots, int parent, String path, int from, boolean ignoreCase) {
+        int end = path.indexOf('/', from);
+        if (end < 0) {
+            end = path.length();
+        }
+
+        int length = end - from;
+        if (length == 0) {
+            return EntryTable.NONE;
+        }
+
+        int hash = ignoreCase ? hashIgnoreCase(path, from, end) : hash(path, from, end);
+
+        for (int slot = mix(31 * parent + hash) & mask; slots[slot] != EMPTY; slot = (slot + 1) & mask) {
+            int i = slots[slot] - 1;
+            String name = getName(i);
+
+            if ((entryTable.getParent(i) == parent) && (name.length() == length) && name.regionMatches(ignoreCase, 0, path, from, length)) {
+                int found = (end == path.length()) ? i : find(slots, i, path, end + 1, ignoreCase);
+                if (found != EntryTable.NONE) {
+                    return found;
+                }
+            }
+        }
+
+        return EntryTable.NONE;
+    }
+
+    private void insert(int[] slots, int index, int nameHash) {
+        int slot = mix(31 * entryTable.getParent(index) + nameHash) & mask;
+        while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+
+        slots[slot] = index + 1;
+    }
+
+    private static int lowerBound(String[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private int[] getIgnoreCaseSlots() {
+        int[] slots = ignoreCaseSlots;
+
+        if (slots == null) {
+            synchronized (this) {
+                slots = ignoreCaseSlots;
+
+                if (slots == null) {
+                    slots = new int[childSlots.length];
+
+                    for (int i = 0; i < entryTable.size(); i++) {
+                        String name = getName(i);
+                        insert(slots, i, hashIgnoreCase(name, 0, name.length()));
+                    }
+
+                    ignoreCaseSlots = slots;
+                }
+            }
+        }
+
+        return slots;
+    }
+
+    private PathOrder getPathOrder() {
+        PathOrder order = pathOrder;
+
+        if (order == null) {
+            synchronized (this) {
+                order = pathOrder;
+
+                if (order == null) {
+                    int size = entryTable.size();
+                    String[] paths = new String[size];
+                    int[] indexes = new int[size];
+
+                    // Parents precede their children in the table
+                    for (int i = 0; i < size; i++) {
+                        int parent = entryTable.getParent(i);
+                        paths[i] = ((parent != EntryTable.NONE) ? paths[parent] : "") + "/" + entryTable.getName(i);
+                        indexes[i] = i;
+                    }
+
+                    IndexSort.sort(indexes, 0, size, (a, b) -> paths[a].compareTo(paths[b]));
+
+                    String[] sortedPaths = new String[size];
+                    for (int i = 0; i < size; i++) {
+                        sortedPaths[i] = paths[indexes[i]];
+                    }
+
+                    pathOrder = order = new PathOrder(indexes, sortedPaths);
+                }
+            }
+        }
+
+        return order;
+    }
+
+    /**
+     * Computes a hash code of a substring consistent with {@link String#hashCode()}.
+     */
+    private static int hash(String s, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+
+        return h;
+    }
+
+    /**
+     * Computes a hash code of a substring consistent with {@link String#equalsIgnoreCase(String)}.
+     */
+    private static int hashIgnoreCase(String s, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+        }
+
+        return h;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9e3779b9;
+
+        return h ^ (h >>> 16);
+    }
+}
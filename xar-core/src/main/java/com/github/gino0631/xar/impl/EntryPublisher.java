@@ -0,0 +1,229 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.common.io.InputStreamSupplier;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publisher of entry data, whose subscriptions read chunks from the entry stream in a drain loop.
+ * <p>
+ * The loop is run by the executor whenever demand arrives, and never by more than one thread at a time; requests made
+ * while it runs, including those made by subscribers from {@code onNext}, are picked up by the running loop, so
+ * an executor running tasks in the calling thread does not cause recursion.
+ * <p>
+ * Data is published up to the end of the entry stream; the declared size only limits the size of chunks, so that
+ * small entries do not get chunk-sized buffers.
+ */
+final class EntryPublisher implements Publisher<ByteBuffer> {
+    private final InputStreamSupplier streamSupplier;
+    private final long size;
+    private final int chunkSize;
+    private final Executor executor;
+
+    private final class EntrySubscription implements Subscription {
+        private final Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private InputStream inputStream;
+        private long published;
+        private int pending = -1;
+        private boolean eof;
+        private boolean done;
+
+        EntrySubscription(Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException(MessageFormat.format("Non-positive request {0}", n));
+
+            } else {
+                requested.accumulateAndGet(n, (r, m) -> (r + m < 0) ? Long.MAX_VALUE : r + m);
+            }
+
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+
+                } catch (RejectedExecutionException e) {
+                    cancelled = true;
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        private void drain() {
+            for (int missed = wip.get(); ; ) {
+                if (!done) {
+                    try {
+                        drainOnce();
+
+                    } catch (RuntimeException e) {
+                        // A failing subscriber is broken (rule 2.13), so it is cancelled rather than signalled again
+                        done = true;
+                        cancelled = true;
+                        closeQuietly();
+                        throw e;
+                    }
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void drainOnce() {
+            if (cancelled) {
+                done = true;
+                closeQuietly();
+                return;
+            }
+
+            if (invalidRequest != null) {
+                done = true;
+                closeQuietly();
+                subscriber.onError(invalidRequest);
+                return;
+            }
+
+            // The end is signalled without demand once it has been reached
+            while ((requested.get() > 0) || eof) {
+                ByteBuffer chunk;
+
+                // Only failures of reading are signalled to the subscriber
+                try {
+                    if (inputStream == null) {
+                        inputStream = streamSupplier.newInputStream();
+
+                        if (inputStream == null) {
+                            done = true;
+                        }
+                    }
+
+                    if (eof) {
+                        // Closing the stream verifies checksums of the data
+                        InputStream is = inputStream;
+                        inputStream = null;
+                        is.close();
+
+                        done = true;
+                    }
+
+                    chunk = done ? null : readChunk();
+
+                } catch (IOException | RuntimeException e) {
+                    done = true;
+                    closeQuietly();
+                    subscriber.onError(e);
+                    return;
+                }
+
+                if (done) {
+                    subscriber.onComplete();
+                    return;
+                }
+
+                if (chunk == null) {
+                    continue;
+                }
+
+                published += chunk.remaining();
+                requested.decrementAndGet();
+                subscriber.onNext(chunk);
+
+                if (cancelled || (invalidRequest != null)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Reads the next chunk, and checks whether the stream ends after it, so that completion needs no demand.
+         *
+         * @return the chunk, or {@code null} if the end of the stream has been reached
+         */
+        private ByteBuffer readChunk() throws IOException {
+            long expected = size - published;
+            byte[] buf = new byte[(int) ((expected > 0) ? Math.min(chunkSize, expected) : chunkSize)];
+            int off = 0;
+
+            if (pending >= 0) {
+                buf[off++] = (byte) pending;
+                pending = -1;
+            }
+
+            while (off < buf.length) {
+                int n = inputStream.read(buf, off, buf.length - off);
+                if (n < 0) {
+                    eof = true;
+                    break;
+                }
+
+                off += n;
+            }
+
+            if (!eof) {
+                pending = inputStream.read();
+                eof = (pending < 0);
+            }
+
+            return (off > 0) ? ByteBuffer.wrap(buf, 0, off) : null;
+        }
+
+        private void closeQuietly() {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+
+                } catch (IOException | RuntimeException e) {
+                    // Data is not needed anymore, so failures to verify it do not matter
+                }
+
+                inputStream = null;
+            }
+        }
+    }
+
+    EntryPublisher(InputStreamSupplier streamSupplier, long size, int chunkSize, Executor executor) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException(MessageFormat.format("Invalid chunk size {0}", chunkSize));
+        }
+
+        this.streamSupplier = streamSupplier;
+        this.size = Math.max(size, 0);
+        this.chunkSize = chunkSize;
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        subscriber.onSubscribe(new EntrySubscription(Objects.requireNonNull(subscriber)));
+    }
+}
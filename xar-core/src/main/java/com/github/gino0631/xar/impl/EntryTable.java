@@ -0,0 +1,548 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.impl.jaxb.toc.DataChecksum;
+import com.github.gino0631.xar.impl.jaxb.toc.FileData;
+import com.github.gino0631.xar.impl.jaxb.toc.FileType;
+import com.github.gino0631.xar.impl.jaxb.toc.TocFile;
+import com.github.gino0631.xar.impl.jaxb.toc.TocFileHolder;
+
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact representation of ToC entries.
+ * <p>
+ * Entries are stored in document order and addressed by index. Each attribute is kept in a primitive array, names are
+ * interned, checksums are packed into a single array, and styles of encodings and checksums are replaced by byte codes.
+ */
+final class EntryTable {
+    static final int NONE = -1;
+
+    private static final FileType[] FILE_TYPES = FileType.values();
+
+    private final int size;
+    private final int firstRoot;
+    private final int[] parents;
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    private final long[] ids;
+    private final String[] names;
+    private final byte[] types;
+    private final long[] lengths;
+    private final long[] offsets;
+    private final long[] sizes;
+    private final byte[] encodings;
+    private final byte[] archivedChecksumStyles;
+    private final byte[] extractedChecksumStyles;
+    private final int[] archivedChecksumOffsets;
+    private final int[] extractedChecksumOffsets;
+    private final byte[] archivedChecksumLengths;
+    private final byte[] extractedChecksumLengths;
+    private final byte[] checksumData;
+    private final String[] styles;
+
+    static final class Builder {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private int size;
+        private int firstRoot = NONE;
+        private int lastRoot = NONE;
+        private int[] parents = new int[INITIAL_CAPACITY];
+        private int[] firstChildren = new int[INITIAL_CAPACITY];
+        private int[] lastChildren = new int[INITIAL_CAPACITY];
+        private int[] nextSiblings = new int[INITIAL_CAPACITY];
+        private long[] ids = new long[INITIAL_CAPACITY];
+        private String[] names = new String[INITIAL_CAPACITY];
+        private byte[] types = new byte[INITIAL_CAPACITY];
+        private long[] lengths = new long[INITIAL_CAPACITY];
+        private long[] offsets = new long[INITIAL_CAPACITY];
+        private long[] sizes = new long[INITIAL_CAPACITY];
+        private byte[] encodings = new byte[INITIAL_CAPACITY];
+        private byte[] archivedChecksumStyles = new byte[INITIAL_CAPACITY];
+        private byte[] extractedChecksumStyles = new byte[INITIAL_CAPACITY];
+        private int[] archivedChecksumOffsets = new int[INITIAL_CAPACITY];
+        private int[] extractedChecksumOffsets = new int[INITIAL_CAPACITY];
+        private byte[] archivedChecksumLengths = new byte[INITIAL_CAPACITY];
+        private byte[] extractedChecksumLengths = new byte[INITIAL_CAPACITY];
+        private byte[] checksumData = new byte[INITIAL_CAPACITY * 40];
+        private int checksumDataSize;
+        private final List<String> styles = new ArrayList<>();
+
+        /**
+         * Adds an entry.
+         *
+         * @param parent index of the parent entry, or {@link #NONE} if the entry is at the top level
+         * @param id     identifier of the entry
+         * @return index of the new entry
+         */
+        int add(int parent, long id) {
+            if (size == ids.length) {
+                grow();
+            }
+
+            int index = size++;
+            parents[index] = parent;
+            firstChildren[index] = NONE;
+            lastChildren[index] = NONE;
+            nextSiblings[index] = NONE;
+            ids[index] = id;
+            types[index] = NONE;
+            lengths[index] = NONE;
+            offsets[index] = NONE;
+            sizes[index] = NONE;
+            encodings[index] = NONE;
+            archivedChecksumStyles[index] = NONE;
+            extractedChecksumStyles[index] = NONE;
+
+            if (parent == NONE) {
+                if (lastRoot == NONE) {
+                    firstRoot = index;
+                } else {
+                    nextSiblings[lastRoot] = index;
+                }
+                lastRoot = index;
+
+            } else {
+                if (lastChildren[parent] == NONE) {
+                    firstChildren[parent] = index;
+                } else {
+                    nextSiblings[lastChildren[parent]] = index;
+                }
+                lastChildren[parent] = index;
+            }
+
+            return index;
+        }
+
+        void setName(int index, String name) {
+            names[index] = (name != null) ? name.intern() : null;
+        }
+
+        void setType(int index, FileType type) {
+            types[index] = (type != null) ? (byte) type.ordinal() : NONE;
+        }
+
+        void setLength(int index, long length) {
+            lengths[index] = length;
+        }
+
+        void setOffset(int index, long offset) {
+            offsets[index] = offset;
+        }
+
+        void setSize(int index, long size) {
+            sizes[index] = size;
+        }
+
+        void setEncoding(int index, String style) {
+            encodings[index] = toStyleCode(style);
+        }
+
+        void setArchivedChecksum(int index, String style, byte[] value) {
+            archivedChecksumStyles[index] = toStyleCode(style);
+            archivedChecksumOffsets[index] = appendChecksum(value);
+            archivedChecksumLengths[index] = toChecksumLength(value);
+        }
+
+        void setExtractedChecksum(int index, String style, byte[] value) {
+            extractedChecksumStyles[index] = toStyleCode(style);
+            extractedChecksumOffsets[index] = appendChecksum(value);
+            extractedChecksumLengths[index] = toChecksumLength(value);
+        }
+
+        /**
+         * Adds entries of a ToC model.
+         *
+         * @param parent index of the parent entry, or {@link #NONE} if the entries are at the top level
+         * @param holder holder of the entries to add
+         * @return this builder
+         */
+        Builder addAll(int parent, TocFileHolder holder) {
+            List<TocFile> files = holder.getFiles();
+
+            if (files != null) {
+                for (TocFile f : files) {
+                    int index = add(parent, f.getId());
+                    setName(index, f.getName());
+                    setType(index, f.getType());
+
+                    FileData data = f.getData();
+                    if (data != null) {
+                        setLength(index, data.getLength());
+                        setOffset(index, data.getOffset());
+                        setSize(index, data.getSize());
+                        setEncoding(index, (data.getEncoding() != null) ? data.getEncoding().getStyle() : null);
+
+                        DataChecksum archivedChecksum = data.getArchivedChecksum();
+                        if (archivedChecksum != null) {
+                            setArchivedChecksum(index, archivedChecksum.getStyle(), archivedChecksum.getValue());
+                        }
+
+                        DataChecksum extractedChecksum = data.getExtractedChecksum();
+                        if (extractedChecksum != null) {
+                            setExtractedChecksum(index, extractedChecksum.getStyle(), extractedChecksum.getValue());
+                        }
+                    }
+
+                    addAll(index, f);
+                }
+            }
+
+            return this;
+        }
+
+        EntryTable build() {
+            return new EntryTable(this);
+        }
+
+        private int appendChecksum(byte[] value) {
+            int pos = checksumDataSize;
+
+            if (value != null) {
+                if (checksumDataSize + value.length > checksumData.length) {
+                    checksumData = Arrays.copyOf(checksumData, Math.max(checksumData.length * 2, checksumDataSize + value.length));
+                }
+
+                System.arraycopy(value, 0, checksumData, checksumDataSize, value.length);
+                checksumDataSize += value.length;
+            }
+
+            return pos;
+        }
+
+        private byte toChecksumLength(byte[] value) {
+            if (value == null) {
+                return 0;
+            }
+
+            if (value.length > 0xff) {
+                throw new IllegalArgumentException(MessageFormat.format("Checksum is too long ({0} bytes)", value.length));
+            }
+
+            return (byte) value.length;
+        }
+
+        private byte toStyleCode(String style) {
+            if (style == null) {
+                return NONE;
+            }
+
+            int code = styles.indexOf(style);
+            if (code < 0) {
+                code = styles.size();
+                if (code > Byte.MAX_VALUE) {
+                    throw new IllegalArgumentException(MessageFormat.format("Too many distinct styles, cannot add {0}", style));
+                }
+
+                styles.add(style);
+            }
+
+            return (byte) code;
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+
+            parents = Arrays.copyOf(parents, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            lastChildren = Arrays.copyOf(lastChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            types = Arrays.copyOf(types, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            encodings = Arrays.copyOf(encodings, capacity);
+            archivedChecksumStyles = Arrays.copyOf(archivedChecksumStyles, capacity);
+            extractedChecksumStyles = Arrays.copyOf(extractedChecksumStyles, capacity);
+            archivedChecksumOffsets = Arrays.copyOf(archivedChecksumOffsets, capacity);
+            extractedChecksumOffsets = Arrays.copyOf(extractedChecksumOffsets, capacity);
+            archivedChecksumLengths = Arrays.copyOf(archivedChecksumLengths, capacity);
+            extractedChecksumLengths = Arrays.copyOf(extractedChecksumLengths, capacity);
+        }
+    }
+
+    private EntryTable(Builder b) {
+        size = b.size;
+        firstRoot = b.firstRoot;
+        parents = Arrays.copyOf(b.parents, size);
+        firstChildren = Arrays.copyOf(b.firstChildren, size);
+        nextSiblings = Arrays.copyOf(b.nextSiblings, size);
+        ids = Arrays.copyOf(b.ids, size);
+        names = Arrays.copyOf(b.names, size);
+        types = Arrays.copyOf(b.types, size);
+        lengths = Arrays.copyOf(b.lengths, size);
+        offsets = Arrays.copyOf(b.offsets, size);
+        sizes = Arrays.copyOf(b.sizes, size);
+        encodings = Arrays.copyOf(b.encodings, size);
+        archivedChecksumStyles = Arrays.copyOf(b.archivedChecksumStyles, size);
+        extractedChecksumStyles = Arrays.copyOf(b.extractedChecksumStyles, size);
+        archivedChecksumOffsets = Arrays.copyOf(b.archivedChecksumOffsets, size);
+        extractedChecksumOffsets = Arrays.copyOf(b.extractedChecksumOffsets, size);
+        archivedChecksumLengths = Arrays.copyOf(b.archivedChecksumLengths, size);
+        extractedChecksumLengths = Arrays.copyOf(b.extractedChecksumLengths, size);
+        checksumData = Arrays.copyOf(b.checksumData, b.checksumDataSize);
+        styles = b.styles.toArray(new String[0]);
+    }
+
+    static EntryTable of(TocFileHolder holder) {
+        return new Builder().addAll(NONE, holder).build();
+    }
+
+    /**
+     * Reads a table written by {@link #writeTo(DataOutput)}.
+     * <p>
+     * The data is validated, so that a corrupt table causes neither big allocations nor cycles in the tree.
+     *
+     * @param input input to read from, whose {@link DataInputStream#available()} is the number of remaining bytes
+     * @return the table
+     * @throws IOException if an I/O error occurs, or if the data is invalid
+     */
+    static EntryTable readFrom(DataInputStream input) throws IOException {
+        int size = readCount(input, "entry");
+        String[] styles = new String[readCount(input, "style")];
+        if (styles.length > Byte.MAX_VALUE + 1) {
+            throw new IOException(MessageFormat.format("Invalid style count {0}", styles.length));
+        }
+
+        for (int i = 0; i < styles.length; i++) {
+            styles[i] = readString(input);
+        }
+
+        Builder b = new Builder();
+
+        for (int i = 0; i < size; i++) {
+            // Parents always precede their children, which also rules out cycles
+            int parent = input.readInt();
+            if ((parent < NONE) || (parent >= i)) {
+                throw new IOException(MessageFormat.format("Invalid parent {0} of entry {1}", parent, i));
+            }
+
+            int index = b.add(parent, input.readLong());
+            b.setName(index, readString(input));
+
+            byte type = input.readByte();
+            b.setType(index, (type != NONE) ? FILE_TYPES[checkCode(type, FILE_TYPES.length, "type")] : null);
+            b.setLength(index, input.readLong());
+            b.setOffset(index, input.readLong());
+            b.setSize(index, input.readLong());
+
+            byte encoding = input.readByte();
+            b.setEncoding(index, (encoding != NONE) ? styles[checkCode(encoding, styles.length, "style")] : null);
+
+            byte archivedChecksumStyle = input.readByte();
+            if (archivedChecksumStyle != NONE) {
+                b.setArchivedChecksum(index, styles[checkCode(archivedChecksumStyle, styles.length, "style")], readChecksum(input));
+            }
+
+            byte extractedChecksumStyle = input.readByte();
+            if (extractedChecksumStyle != NONE) {
+                b.setExtractedChecksum(index, styles[checkCode(extractedChecksumStyle, styles.length, "style")], readChecksum(input));
+            }
+        }
+
+        return b.build();
+    }
+
+    /**
+     * Writes the table in a compact binary form.
+     *
+     * @param output output to write to
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo(DataOutput output) throws IOException {
+        output.writeInt(size);
+        output.writeInt(styles.length);
+        for (String style : styles) {
+            writeString(output, style);
+        }
+
+        // Entries are in document order, so parents are always added before their children
+        for (int i = 0; i < size; i++) {
+            output.writeInt(parents[i]);
+            output.writeLong(ids[i]);
+            writeString(output, names[i]);
+            output.writeByte(types[i]);
+            output.writeLong(lengths[i]);
+            output.writeLong(offsets[i]);
+            output.writeLong(sizes[i]);
+            output.writeByte(encodings[i]);
+
+            output.writeByte(archivedChecksumStyles[i]);
+            if (archivedChecksumStyles[i] != NONE) {
+                output.writeByte(archivedChecksumLengths[i]);
+                output.write(checksumData, archivedChecksumOffsets[i], archivedChecksumLengths[i] & 0xff);
+            }
+
+            output.writeByte(extractedChecksumStyles[i]);
+            if (extractedChecksumStyles[i] != NONE) {
+                output.writeByte(extractedChecksumLengths[i]);
+                output.write(checksumData, extractedChecksumOffsets[i], extractedChecksumLengths[i] & 0xff);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getFirstRoot() {
+        return firstRoot;
+    }
+
+    int getParent(int index) {
+        return parents[index];
+    }
+
+    int getFirstChild(int index) {
+        return firstChildren[index];
+    }
+
+    int getNextSibling(int index) {
+        return nextSiblings[index];
+    }
+
+    long getId(int index) {
+        return ids[index];
+    }
+
+    String getName(int index) {
+        return names[index];
+    }
+
+    FileType getType(int index) {
+        return (types[index] != NONE) ? FILE_TYPES[types[index]] : null;
+    }
+
+    boolean hasData(int index) {
+        return (lengths[index] != NONE);
+    }
+
+    long getLength(int index) {
+        return lengths[index];
+    }
+
+    long getOffset(int index) {
+        return offsets[index];
+    }
+
+    long getSize(int index) {
+        return sizes[index];
+    }
+
+    String getPath(int index) {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = index; i != NONE; i = parents[i]) {
+            sb.insert(0, names[i]).insert(0, '/');
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Gets entries having data, in the order of their location in the heap.
+     *
+     * @return indexes of the entries, sorted by offset
+     */
+    int[] getHeapOrder() {
+        int[] result = new int[size];
+        int cnt = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (hasData(i)) {
+                result[cnt++] = i;
+            }
+        }
+
+        IndexSort.sort(result, 0, cnt, (a, b) -> Long.compare(offsets[a], offsets[b]));
+
+        return (cnt < size) ? Arrays.copyOf(result, cnt) : result;
+    }
+
+    String getEncodingStyle(int index) {
+        return toStyle(encodings[index]);
+    }
+
+    String getArchivedChecksumStyle(int index) {
+        return toStyle(archivedChecksumStyles[index]);
+    }
+
+    byte[] getArchivedChecksum(int index) {
+        return (archivedChecksumStyles[index] != NONE) ? getChecksum(archivedChecksumOffsets[index], archivedChecksumLengths[index]) : null;
+    }
+
+    String getExtractedChecksumStyle(int index) {
+        return toStyle(extractedChecksumStyles[index]);
+    }
+
+    byte[] getExtractedChecksum(int index) {
+        return (extractedChecksumStyles[index] != NONE) ? getChecksum(extractedChecksumOffsets[index], extractedChecksumLengths[index]) : null;
+    }
+
+    private byte[] getChecksum(int offset, byte length) {
+        return Arrays.copyOfRange(checksumData, offset, offset + (length & 0xff));
+    }
+
+    private String toStyle(byte code) {
+        return (code != NONE) ? styles[code] : null;
+    }
+
+    private static byte[] readChecksum(DataInputStream input) throws IOException {
+        byte[] value = new byte[input.readUnsignedByte()];
+        input.readFully(value);
+
+        return value;
+    }
+
+    private static int readCount(DataInputStream input, String what) throws IOException {
+        int count = input.readInt();
+        if ((count < 0) || (count > input.available())) {
+            throw new IOException(MessageFormat.format("Invalid {0} count {1}", what, count));
+        }
+
+        return count;
+    }
+
+    private static int checkCode(byte code, int count, String what) throws IOException {
+        if ((code < 0) || (code >= count)) {
+            throw new IOException(MessageFormat.format("Invalid {0} code {1}", what, code));
+        }
+
+        return code;
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        if (length > input.available()) {
+            throw new IOException(MessageFormat.format("Invalid string length {0}", length));
+        }
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutput output, String s) throws IOException {
+        if (s == null) {
+            output.writeInt(-1);
+
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+}
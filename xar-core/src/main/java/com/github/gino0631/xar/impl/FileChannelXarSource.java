@@ -0,0 +1,220 @@
+package com.github.gino0631.xar.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+/**
+ * Source which keeps a single file channel open and serves all reads as positional reads.
+ * <p>
+ * File channels are closed when a thread using them is interrupted, which would break the archive for all other
+ * threads; so when an operation fails because the channel has been closed that way, the channel is reopened
+ * and the operation is retried, with the interrupt status of the interrupted thread restored afterwards.
+ */
+final class FileChannelXarSource implements XarSource {
+    private final Path file;
+    private volatile FileChannel channel;
+    private volatile boolean closed;
+
+    @FunctionalInterface
+    private interface ChannelOperation<T> {
+        T apply(FileChannel channel) throws IOException;
+    }
+
+    final class ChannelInputStream extends InputStream {
+        private long pos;
+        private final long end;
+
+        ChannelInputStream(long pos, long length) {
+            this.pos = pos;
+            this.end = pos + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+
+            return (read(b, 0, 1) > 0) ? (b[0] & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            long remaining = end - pos;
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            ByteBuffer dst = ByteBuffer.wrap(b, off, (int) Math.min(len, remaining));
+            int n = withChannel((ch) -> ch.read(dst, pos));
+            if (n > 0) {
+                pos += n;
+            }
+
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(Math.min(n, end - pos), 0);
+            pos += skipped;
+
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.max(Math.min(end - pos, Integer.MAX_VALUE), 0);
+        }
+    }
+
+    FileChannelXarSource(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    @Override
+    public InputStream newInputStream(long pos, long length) throws IOException {
+        if (pos + length > size()) {
+            throw new IOException(MessageFormat.format("Stream should contain at least {0} bytes, but it does not", pos + length));
+        }
+
+        return new ChannelInputStream(pos, length);
+    }
+
+    @Override
+    public byte[] read(long pos, int cnt) throws IOException {
+        if (pos + cnt > size()) {
+            throw new EOFException();
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(cnt);
+
+        while (buf.hasRemaining()) {
+            if (withChannel((ch) -> ch.read(buf, pos + buf.position())) < 0) {
+                throw new EOFException();
+            }
+        }
+
+        return buf.array();
+    }
+
+    @Override
+    public byte[] readAvailable(long pos, int cnt) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.max(Math.min(cnt, size() - pos), 0));
+
+        while (buf.hasRemaining()) {
+            if (withChannel((ch) -> ch.read(buf, pos + buf.position())) < 0) {
+                return Arrays.copyOf(buf.array(), buf.position());
+            }
+        }
+
+        return buf.array();
+    }
+
+    @Override
+    public int read(long pos, ByteBuffer dst) throws IOException {
+        return withChannel((ch) -> ch.read(dst, pos));
+    }
+
+    @Override
+    public void transferTo(long pos, long length, WritableByteChannel target) throws IOException {
+        XarSource.checkBlocking(target);
+
+        if (pos + length > size()) {
+            throw new EOFException(MessageFormat.format("Stream should contain at least {0} bytes, but it does not", pos + length));
+        }
+
+        // Lets the OS copy the data directly where possible (e.g. to sockets and files)
+        for (long end = pos + length; pos < end; ) {
+            pos += transfer(pos, end - pos, target);
+        }
+    }
+
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        WritableByteChannel target = Channels.newChannel(output);
+        long size = size();
+
+        for (long pos = 0; pos < size; ) {
+            pos += transfer(pos, size - pos, target);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+
+        synchronized (this) {
+            channel.close();
+        }
+    }
+
+    private long size() throws IOException {
+        return withChannel(FileChannel::size);
+    }
+
+    /**
+     * Transfers bytes to a blocking channel, failing instead of making no progress at the end of the file.
+     */
+    private long transfer(long pos, long count, WritableByteChannel target) throws IOException {
+        long n = withChannel((ch) -> ch.transferTo(pos, count, target));
+        if ((n == 0) && (pos >= size())) {
+            throw new EOFException(MessageFormat.format("Stream should contain at least {0} bytes, but it does not", pos + count));
+        }
+
+        return n;
+    }
+
+    private <T> T withChannel(ChannelOperation<T> operation) throws IOException {
+        boolean interrupted = false;
+
+        try {
+            for (; ; ) {
+                FileChannel ch = channel;
+
+                try {
+                    return operation.apply(ch);
+
+                } catch (ClosedByInterruptException e) {
+                    // The interrupt status is still set, and would close the reopened channel again
+                    interrupted |= Thread.interrupted();
+                    reopen(ch, e);
+
+                } catch (ClosedChannelException e) {
+                    // Closed by another thread being interrupted
+                    reopen(ch, e);
+                }
+            }
+
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private synchronized void reopen(FileChannel failed, ClosedChannelException e) throws IOException {
+        if (closed) {
+            throw e;
+        }
+
+        if (channel == failed) {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+    }
+}
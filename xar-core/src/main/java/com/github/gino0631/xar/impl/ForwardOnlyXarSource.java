@@ -0,0 +1,163 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.common.io.IoStreams;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+/**
+ * Source which reads a non-seekable stream exactly once.
+ * <p>
+ * Regions must be requested in ascending order of their positions; gaps between them are skipped. Bytes obtained by
+ * {@link #read(long, int)} and {@link #readAvailable(long, int)} (i.e. the header, ToC, checksum and signatures) are
+ * retained, so that streams may be opened over them later.
+ */
+final class ForwardOnlyXarSource implements XarSource {
+    private final InputStream input;
+    private long position;
+    private byte[] retained = new byte[0];
+
+    final class ForwardOnlyInputStream extends InputStream {
+        private long pos;
+        private final long end;
+
+        ForwardOnlyInputStream(long pos, long length) {
+            this.pos = pos;
+            this.end = pos + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+
+            return (read(b, 0, 1) > 0) ? (b[0] & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (pos >= end) {
+                return -1;
+            }
+
+            len = (int) Math.min(len, end - pos);
+            int n;
+
+            synchronized (ForwardOnlyXarSource.this) {
+                if (pos < retained.length) {
+                    n = Math.min(len, retained.length - (int) pos);
+                    System.arraycopy(retained, (int) pos, b, off, n);
+
+                } else {
+                    skipTo(pos);
+
+                    n = input.read(b, off, len);
+                    if (n < 0) {
+                        throw new EOFException(MessageFormat.format("Stream should contain at least {0} bytes, but it does not", end));
+                    }
+
+                    position += n;
+                }
+            }
+
+            pos += n;
+
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.max(Math.min(end - pos, Integer.MAX_VALUE), 0);
+        }
+    }
+
+    ForwardOnlyXarSource(InputStream input) {
+        this.input = input;
+    }
+
+    @Override
+    public synchronized InputStream newInputStream(long pos, long length) throws IOException {
+        if ((pos + length > retained.length) && (Math.max(pos, retained.length) < position)) {
+            throw new IOException(MessageFormat.format("Data at position {0} has already been passed in the stream", pos));
+        }
+
+        return new ForwardOnlyInputStream(pos, length);
+    }
+
+    @Override
+    public byte[] read(long pos, int cnt) throws IOException {
+        byte[] buf = readAvailable(pos, cnt);
+        if (buf.length < cnt) {
+            throw new EOFException();
+        }
+
+        return buf;
+    }
+
+    @Override
+    public synchronized byte[] readAvailable(long pos, int cnt) throws IOException {
+        if (pos + cnt > retained.length) {
+            if (retained.length < position) {
+                throw new IOException(MessageFormat.format("Data at position {0} has already been passed in the stream", pos));
+            }
+
+            // Extend the retained region up to the end of the requested one, growing it as data arrives
+            int oldLength = retained.length;
+            int end = (int) (pos + cnt);
+            byte[] buf = retained;
+
+            int off = oldLength;
+            for (int n; off < end; off += n) {
+                if (off == buf.length) {
+                    buf = Arrays.copyOf(buf, (int) Math.min(Math.max(2L * off, off + CodecPool.BUFFER_SIZE), end));
+                }
+
+                if ((n = input.read(buf, off, buf.length - off)) < 0) {
+                    break;
+                }
+            }
+
+            position += off - oldLength;
+            retained = (off < buf.length) ? Arrays.copyOf(buf, off) : buf;
+        }
+
+        int from = (int) Math.min(pos, retained.length);
+
+        return Arrays.copyOfRange(retained, from, (int) Math.min(pos + cnt, retained.length));
+    }
+
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        throw new IOException("Writing is not supported for archives read from a stream");
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private void skipTo(long pos) throws IOException {
+        if (pos > position) {
+            long n = pos - position;
+            long skipped = IoStreams.skip(input, n);
+            if (skipped < n) {
+                skipped += IoStreams.waste(input, n - skipped);
+            }
+
+            position += skipped;
+            if (skipped < n) {
+                throw new EOFException(MessageFormat.format("Stream should contain at least {0} bytes, but it does not", pos));
+            }
+
+        } else if (pos < position) {
+            throw new IOException(MessageFormat.format("Data at position {0} has already been passed in the stream", pos));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.gino0631.xar.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * In-memory copy of the beginning of an archive.
+ * <p>
+ * The beginning is read in a single request, which normally covers the header, the compressed ToC, the ToC checksum
+ * and the signatures. Regions outside of the buffer are read from the source.
+ * <p>
+ * The buffer is not extended beyond {@link #MAX_SIZE}, so that a huge ToC is streamed from the source instead, except for
+ * forward-only sources, which cannot read the same data twice and retain it anyway.
+ */
+final class HeadBuffer {
+    static final int PREFETCH_SIZE = 64 * 1024;
+    static final int MAX_SIZE = 8 * 1024 * 1024;
+    private static final int MAX_FORWARD_ONLY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final XarSource source;
+    private final int maxSize;
+    private byte[] data;
+    private boolean complete;
+
+    HeadBuffer(XarSource source) throws IOException {
+        this.source = source;
+        this.maxSize = (source instanceof ForwardOnlyXarSource) ? MAX_FORWARD_ONLY_SIZE : MAX_SIZE;
+
+        data = source.readAvailable(0, PREFETCH_SIZE);
+        complete = (data.length < PREFETCH_SIZE);
+    }
+
+    /**
+     * Extends the buffer to the specified length with a single additional read, unless the source is shorter, or the
+     * length exceeds the maximum size of the buffer.
+     *
+     * @param length required length of the buffer
+     * @throws IOException if an I/O error occurs
+     */
+    void ensureLength(long length) throws IOException {
+        if ((length > data.length) && (length <= maxSize) && !complete) {
+            int cnt = (int) length - data.length;
+            byte[] more = source.readAvailable(data.length, cnt);
+
+            int pos = data.length;
+            data = Arrays.copyOf(data, pos + more.length);
+            System.arraycopy(more, 0, data, pos, more.length);
+            complete = (more.length < cnt);
+        }
+    }
+
+    boolean contains(long pos, long length) {
+        return (pos >= 0) && (length >= 0) && (pos + length <= data.length);
+    }
+
+    InputStream newInputStream(long pos, long length) throws IOException {
+        return contains(pos, length) ? new ByteArrayInputStream(data, (int) pos, (int) length) : source.newInputStream(pos, length);
+    }
+
+    byte[] read(long pos, int cnt) throws IOException {
+        return contains(pos, cnt) ? Arrays.copyOfRange(data, (int) pos, (int) pos + cnt) : source.read(pos, cnt);
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.gino0631.xar.impl;
+
+/**
+ * Stable sort of entry indexes, which does not box them.
+ */
+final class IndexSort {
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    @FunctionalInterface
+    interface IndexComparator {
+        int compare(int a, int b);
+    }
+
+    private IndexSort() {
+    }
+
+    /**
+     * Sorts a range of an index array, preserving the order of equal elements.
+     *
+     * @param a          array to sort
+     * @param from       index of the first element, inclusive
+     * @param to         index of the last element, exclusive
+     * @param comparator comparator of the elements
+     */
+    static void sort(int[] a, int from, int to, IndexComparator comparator) {
+        if (to - from > INSERTION_SORT_THRESHOLD) {
+            mergeSort(a, a.clone(), from, to, comparator);
+        } else {
+            insertionSort(a, from, to, comparator);
+        }
+    }
+
+    /**
+     * Sorts {@code dst} in the specified range, using {@code src} holding the same elements as a scratch space.
+     */
+    private static void mergeSort(int[] dst, int[] src, int from, int to, IndexComparator comparator) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(dst, from, to, comparator);
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        mergeSort(src, dst, from, mid, comparator);
+        mergeSort(src, dst, mid, to, comparator);
+
+        if (comparator.compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, from, dst, from, to - from);
+            return;
+        }
+
+        for (int i = from, p = from, q = mid; i < to; i++) {
+            if ((q >= to) || ((p < mid) && (comparator.compare(src[p], src[q]) <= 0))) {
+                dst[i] = src[p++];
+            } else {
+                dst[i] = src[q++];
+            }
+        }
+    }
+
+    private static void insertionSort(int[] a, int from, int to, IndexComparator comparator) {
+        for (int i = from + 1; i < to; i++) {
+            int x = a[i];
+            int j = i;
+
+            for (; (j > from) && (comparator.compare(a[j - 1], x) > 0); j--) {
+                a[j] = a[j - 1];
+            }
+
+            a[j] = x;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.github.gino0631.xar.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Source which memory-maps the whole file and serves all reads from the mappings.
+ * <p>
+ * Files bigger than {@link #MAPPING_SIZE} are split into several mappings.
+ * <p>
+ * Every read and every open stream holds a lease on the mappings, and the mappings are explicitly unmapped only when
+ * the source is closed and the last lease is released, so that no reader can ever touch an unmapped region. Streams
+ * which are never closed keep the mappings alive until they are released by garbage collector.
+ */
+final class MappedXarSource implements XarSource {
+    private static final Logger logger = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+    static final int MAPPING_SHIFT = 30;
+    static final long MAPPING_SIZE = 1L << MAPPING_SHIFT;
+
+    private static final Consumer<ByteBuffer> UNMAPPER = getUnmapper();
+
+    private final long size;
+    private final MappedByteBuffer[] mappings;
+    private final AtomicInteger leases = new AtomicInteger(1);
+    private volatile boolean closed;
+
+    /**
+     * Stream over a source region, which holds a lease until closed, so buffers returned by {@link #readBuffer(int)}
+     * stay valid until then.
+     */
+    final class MappedInputStream extends InputStream implements ByteBufferInput {
+        private long pos;
+        private final long end;
+        private ByteBuffer buffer;
+        private boolean released;
+
+        MappedInputStream(long pos, long length) {
+            this.pos = pos;
+            this.end = pos + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            ByteBuffer buf = nextBuffer();
+            if (buf == null) {
+                return -1;
+            }
+
+            pos++;
+
+            return buf.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            ByteBuffer buf = nextBuffer();
+            if (buf == null) {
+                return -1;
+            }
+
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            pos += n;
+
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(Math.min(n, end - pos), 0);
+            pos += skipped;
+            buffer = null;
+
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.max(Math.min(end - pos, Integer.MAX_VALUE), 0);
+        }
+
+        @Override
+        public ByteBuffer readBuffer(int maxLength) throws IOException {
+            ByteBuffer buf = nextBuffer();
+            if (buf == null) {
+                return null;
+            }
+
+            ByteBuffer result = buf.slice();
+            int n = Math.min(maxLength, result.remaining());
+            result.limit(n);
+            buf.position(buf.position() + n);
+            pos += n;
+
+            return result;
+        }
+
+        private ByteBuffer nextBuffer() throws IOException {
+            if (closed) {
+                throw new IOException("The archive is closed");
+            }
+
+            if (pos >= end) {
+                return null;
+            }
+
+            if ((buffer == null) || !buffer.hasRemaining()) {
+                buffer = slice(pos, end - pos);
+            }
+
+            return buffer;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                buffer = null;
+                release();
+            }
+        }
+    }
+
+    MappedXarSource(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+            mappings = new MappedByteBuffer[(int) ((size + MAPPING_SIZE - 1) >>> MAPPING_SHIFT)];
+
+            try {
+                for (int i = 0; i < mappings.length; i++) {
+                    long pos = (long) i << MAPPING_SHIFT;
+                    mappings[i] = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAPPING_SIZE, size - pos));
+                }
+
+            } catch (IOException | RuntimeException e) {
+                unmap();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public InputStream newInputStream(long pos, long length) throws IOException {
+        checkBounds(pos, length);
+        acquire();
+
+        return new MappedInputStream(pos, length);
+    }
+
+    @Override
+    public byte[] read(long pos, int cnt) throws IOException {
+        checkBounds(pos, cnt);
+        byte[] buf = new byte[cnt];
+
+        acquire();
+        try {
+            for (int off = 0; off < cnt; ) {
+                ByteBuffer slice = slice(pos + off, cnt - off);
+                int n = slice.remaining();
+                slice.get(buf, off, n);
+                off += n;
+            }
+
+        } finally {
+            release();
+        }
+
+        return buf;
+    }
+
+    @Override
+    public byte[] readAvailable(long pos, int cnt) throws IOException {
+        if (pos >= size) {
+            checkOpen();
+
+            return new byte[0];
+        }
+
+        return read(pos, (int) Math.min(cnt, size - pos));
+    }
+
+    @Override
+    public int read(long pos, ByteBuffer dst) throws IOException {
+        checkOpen();
+
+        if (pos >= size) {
+            return dst.hasRemaining() ? -1 : 0;
+        }
+
+        int cnt = 0;
+
+        acquire();
+        try {
+            while (dst.hasRemaining() && (pos < size)) {
+                ByteBuffer slice = slice(pos, Math.min(dst.remaining(), size - pos));
+                int n = slice.remaining();
+                dst.put(slice);
+                pos += n;
+                cnt += n;
+            }
+
+        } finally {
+            release();
+        }
+
+        return cnt;
+    }
+
+    /**
+     * Gets a view of the source region, which is truncated at the end of the mapping containing its start.
+     * <p>
+     * The caller must hold a lease while using the view.
+     *
+     * @param pos    position of the region
+     * @param length length of the region
+     * @return a new buffer
+     */
+    ByteBuffer slice(long pos, long length) {
+        MappedByteBuffer mapping = mappings[(int) (pos >>> MAPPING_SHIFT)];
+        if (mapping == null) {
+            throw new IllegalStateException("The archive is closed");
+        }
+
+        ByteBuffer buf = mapping.duplicate();
+        int start = (int) (pos & (MAPPING_SIZE - 1));
+        buf.position(start);
+        buf.limit((int) Math.min(buf.capacity(), start + length));
+
+        return buf;
+    }
+
+    @Override
+    public void transferTo(long pos, long length, WritableByteChannel target) throws IOException {
+        XarSource.checkBlocking(target);
+        checkBounds(pos, length);
+
+        acquire();
+        try {
+            for (long end = pos + length; pos < end; ) {
+                ByteBuffer slice = slice(pos, end - pos);
+                int n = slice.remaining();
+
+                while (slice.hasRemaining()) {
+                    target.write(slice);
+                }
+
+                pos += n;
+            }
+
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void digest(long pos, long length, MessageDigest... digests) throws IOException {
+        checkBounds(pos, length);
+
+        acquire();
+        try {
+            for (long end = pos + length; pos < end; ) {
+                ByteBuffer slice = slice(pos, end - pos);
+                int n = slice.remaining();
+
+                for (MessageDigest digest : digests) {
+                    digest.update(slice.duplicate());
+                }
+
+                pos += n;
+            }
+
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        byte[] buf = new byte[8192];
+
+        try (InputStream is = newInputStream(0, size)) {
+            for (int n; (n = is.read(buf)) >= 0; ) {
+                output.write(buf, 0, n);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            release();
+        }
+    }
+
+    /**
+     * Takes a lease on the mappings, preventing them from being unmapped until it is released.
+     *
+     * @throws IOException if the mappings have already been released
+     */
+    private void acquire() throws IOException {
+        for (int n; (n = leases.get()) > 0; ) {
+            if (leases.compareAndSet(n, n + 1)) {
+                return;
+            }
+        }
+
+        throw new IOException("The archive is closed");
+    }
+
+    private void release() {
+        if (leases.decrementAndGet() == 0) {
+            unmap();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The archive is closed");
+        }
+    }
+
+    private void checkBounds(long pos, long length) throws IOException {
+        checkOpen();
+
+        if (pos + length > size) {
+            throw new EOFException(MessageFormat.format("Stream should contain at least {0} bytes, but it does not", pos + length));
+        }
+    }
+
+    private void unmap() {
+        for (int i = 0; i < mappings.length; i++) {
+            if (mappings[i] != null) {
+                if (UNMAPPER != null) {
+                    UNMAPPER.accept(mappings[i]);
+                }
+                mappings[i] = null;
+            }
+        }
+    }
+
+    private static Consumer<ByteBuffer> getUnmapper() {
+        try {
+            // Java 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+
+            return (buf) -> invoke(invokeCleaner, unsafe, buf);
+
+        } catch (NoSuchMethodException e) {
+            try {
+                // Java 8
+                Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+
+                return (buf) -> invoke(clean, invoke(cleaner, buf));
+
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                logUnmapperUnavailable(ex);
+            }
+
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logUnmapperUnavailable(e);
+        }
+
+        return null;
+    }
+
+    private static Object invoke(Method method, Object obj, Object... args) {
+        try {
+            return method.invoke(obj, args);
+
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void logUnmapperUnavailable(Exception e) {
+        logger.log(Level.FINE, "Explicit unmapping is not available, mappings will be released by garbage collector", e);
+    }
+}
@@ -0,0 +1,368 @@
+package com.github.gino0631.xar.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stream which reads the underlying stream ahead in a background task, into a bounded ring of pooled blocks.
+ * <p>
+ * If the task has not started by the time data is needed (e.g. because the executor is saturated), the data is read
+ * in the calling thread instead. A task whose stream has been dropped without closing gives up and closes the input.
+ * <p>
+ * If a message digest is specified, it is updated with all data read. It is safe to use the digest after this stream
+ * has reached the end.
+ */
+final class ReadAheadInputStream extends InputStream {
+    static final int BLOCK_COUNT = 4;
+
+    /**
+     * Executor, which runs as many tasks as there are processors, and rejects the others.
+     */
+    static final Executor DEFAULT_EXECUTOR = newDefaultExecutor();
+
+    private static final long POLL_TIMEOUT_MILLIS = 1000;
+    private static final byte[] WAKE_UP = new byte[0];
+    private static final Block END = new Block(null, 0, null);
+
+    private final Producer producer;
+    private byte[] directBuffer;
+    private Block block;
+    private int pos;
+    private boolean eof;
+    private boolean closed;
+
+    private static final class Block {
+        final byte[] data;
+        final int length;
+        final IOException exception;
+
+        Block(byte[] data, int length, IOException exception) {
+            this.data = data;
+            this.length = length;
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Background task, which does not refer to the stream, so that the stream can be collected if it is dropped.
+     */
+    private static final class Producer implements Runnable {
+        static final int PENDING = 0;
+        static final int RUNNING = 1;
+        static final int BYPASSED = 2;
+
+        final InputStream input;
+        final MessageDigest messageDigest;
+        final WeakReference<ReadAheadInputStream> consumer;
+        final BlockingQueue<byte[]> freeBlocks = new ArrayBlockingQueue<>(BLOCK_COUNT);
+        final BlockingQueue<Block> filledBlocks = new ArrayBlockingQueue<>(BLOCK_COUNT + 1);     // with room for the end marker
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile boolean cancelled;
+        int allocated;
+
+        Producer(InputStream input, MessageDigest messageDigest, ReadAheadInputStream consumer) {
+            this.input = input;
+            this.messageDigest = messageDigest;
+            this.consumer = new WeakReference<>(consumer);
+        }
+
+        @Override
+        public void run() {
+            if (state.compareAndSet(PENDING, RUNNING)) {
+                try {
+                    produce();
+
+                } catch (InterruptedException e) {
+                    filledBlocks.offer(new Block(null, 0, new InterruptedIOException()));
+                    Thread.currentThread().interrupt();
+
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+
+        /**
+         * Switches to reading in the consumer thread, unless the task has already started.
+         *
+         * @return {@code true} if the data is read by the consumer
+         */
+        boolean bypass() {
+            return state.compareAndSet(PENDING, BYPASSED) || (state.get() == BYPASSED);
+        }
+
+        int fill(byte[] buf) throws IOException {
+            int n = 0;
+            for (int r; (n < buf.length) && ((r = input.read(buf, n, buf.length - n)) >= 0); ) {
+                n += r;
+            }
+
+            if ((n > 0) && (messageDigest != null)) {
+                messageDigest.update(buf, 0, n);
+            }
+
+            return n;
+        }
+
+        private void produce() throws InterruptedException {
+            try {
+                while (!cancelled) {
+                    byte[] buf = nextFreeBlock();
+                    if (buf == null) {
+                        return;
+                    }
+
+                    int n = fill(buf);
+
+                    if (n > 0) {
+                        filledBlocks.add(new Block(buf, n, null));
+                    } else if (!freeBlocks.offer(buf)) {
+                        release(buf);
+                    }
+
+                    if (n < buf.length) {
+                        break;
+                    }
+                }
+
+                filledBlocks.add(END);
+
+            } catch (IOException e) {
+                filledBlocks.add(new Block(null, 0, e));
+            }
+        }
+
+        /**
+         * Waits for a free block, giving up if the stream is closed or dropped.
+         *
+         * @return a free block, or {@code null} if reading should stop
+         */
+        private byte[] nextFreeBlock() throws InterruptedException {
+            byte[] buf = freeBlocks.poll();
+
+            if ((buf == null) && (allocated < BLOCK_COUNT)) {
+                allocated++;
+                buf = CodecPool.acquireBuffer();
+            }
+
+            while (buf == null) {
+                buf = freeBlocks.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+                if ((buf == null) && (consumer.get() == null)) {
+                    abandon();
+                    return null;
+                }
+            }
+
+            if (cancelled) {
+                if (buf != WAKE_UP) {
+                    freeBlocks.offer(buf);
+                }
+
+                return null;
+            }
+
+            return buf;
+        }
+
+        private void abandon() {
+            for (byte[] buf; (buf = freeBlocks.poll()) != null; ) {
+                release(buf);
+            }
+
+            for (Block b; (b = filledBlocks.poll()) != null; ) {
+                release(b.data);
+            }
+
+            try {
+                input.close();
+
+            } catch (IOException e) {
+                // The stream has been dropped, so there is nobody to report to
+            }
+        }
+    }
+
+    ReadAheadInputStream(InputStream input, MessageDigest messageDigest, Executor executor) {
+        producer = new Producer(input, messageDigest, this);
+
+        try {
+            executor.execute(producer);
+
+        } catch (RejectedExecutionException e) {
+            producer.bypass();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+
+        return block.data[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!nextBlock()) {
+            return -1;
+        }
+
+        int n = Math.min(len, block.length - pos);
+        System.arraycopy(block.data, pos, b, off, n);
+        pos += n;
+
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (eof) {
+            return 0;
+        }
+
+        // Like InflaterInputStream, report that more data may follow until the end has been reached
+        return (block != null) ? Math.max(block.length - pos, 1) : 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+
+            try {
+                if (!producer.bypass()) {
+                    // Wake up the producer if it waits for a free block, and wait for it to stop using the input
+                    producer.cancelled = true;
+                    producer.freeBlocks.offer(WAKE_UP);
+
+                    producer.done.await();
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+
+            } finally {
+                releaseBlocks();
+                producer.input.close();
+            }
+        }
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        while ((block == null) || (pos == block.length)) {
+            if (eof) {
+                return false;
+            }
+
+            Block next;
+
+            if (producer.bypass()) {
+                // Nothing has been read ahead, so read in this thread
+                if (directBuffer == null) {
+                    directBuffer = CodecPool.acquireBuffer();
+                }
+
+                block = null;
+                int n = producer.fill(directBuffer);
+                next = (n > 0) ? new Block(directBuffer, n, null) : END;
+
+            } else {
+                if (block != null) {
+                    producer.freeBlocks.offer(block.data);
+                    block = null;
+                }
+
+                try {
+                    next = producer.filledBlocks.take();
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+
+            if (next.exception != null) {
+                eof = true;
+                throw next.exception;
+            }
+
+            if (next.data == null) {
+                eof = true;
+                return false;
+            }
+
+            block = next;
+            pos = 0;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns all blocks to the pool, once the producer has stopped.
+     */
+    private void releaseBlocks() {
+        if ((block != null) && (block.data != directBuffer)) {
+            release(block.data);
+        }
+
+        block = null;
+
+        if (directBuffer != null) {
+            release(directBuffer);
+            directBuffer = null;
+        }
+
+        for (byte[] buf; (buf = producer.freeBlocks.poll()) != null; ) {
+            release(buf);
+        }
+
+        for (Block b; (b = producer.filledBlocks.poll()) != null; ) {
+            release(b.data);
+        }
+    }
+
+    private static void release(byte[] buf) {
+        if ((buf != null) && (buf != WAKE_UP)) {
+            CodecPool.releaseBuffer(buf);
+        }
+    }
+
+    private static Executor newDefaultExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = (r) -> {
+            Thread t = new Thread(r, "xar-read-ahead-" + count.incrementAndGet());
+            t.setDaemon(true);
+
+            return t;
+        };
+
+        return new ThreadPoolExecutor(0, Runtime.getRuntime().availableProcessors(), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), threadFactory);
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.common.io.InputStreamSupplier;
+import com.github.gino0631.common.io.IoStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+
+/**
+ * Source which opens a new stream for each read, skipping to the requested position.
+ */
+final class StreamXarSource implements XarSource {
+    private final InputStreamSupplier streamSupplier;
+
+    StreamXarSource(InputStreamSupplier streamSupplier) {
+        this.streamSupplier = streamSupplier;
+    }
+
+    @Override
+    public InputStream newInputStream(long pos, long length) throws IOException {
+        InputStream is = streamSupplier.newInputStream();
+
+        try {
+            if (IoStreams.skip(is, pos) != pos) {
+                throw new IOException(MessageFormat.format("Stream should contain at least {0} bytes, but it does not", pos + length));
+            }
+
+            return IoStreams.limit(is, length);
+
+        } catch (IOException | RuntimeException e) {
+            is.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] readAvailable(long pos, int cnt) throws IOException {
+        try (InputStream is = streamSupplier.newInputStream()) {
+            return (IoStreams.skip(is, pos) == pos) ? XarSource.readAvailable(is, cnt) : new byte[0];
+        }
+    }
+
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        try (InputStream is = streamSupplier.newInputStream()) {
+            IoStreams.copy(is, output);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
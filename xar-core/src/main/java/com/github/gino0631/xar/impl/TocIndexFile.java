@@ -0,0 +1,288 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.ChecksumAlgorithm;
+import com.github.gino0631.xar.TocCache;
+import com.github.gino0631.xar.XarArchive;
+import com.github.gino0631.xar.impl.jaxb.toc.KeyInfo;
+import com.github.gino0631.xar.impl.jaxb.toc.TocChecksum;
+import com.github.gino0631.xar.impl.jaxb.toc.X509Data;
+import com.github.gino0631.xar.impl.jaxb.toc.XarSignature;
+
+import jakarta.xml.bind.DatatypeConverter;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Index file of a {@link TocCache}, holding the parsed ToC of an archive file.
+ * <p>
+ * The file is named after a hash of the archive path, and starts with a key, which identifies the archive file
+ * by its path, size and modification time, and its content by the header and the ToC checksum. It ends with a digest
+ * of all preceding data, so that a corrupt index is rebuilt rather than used.
+ */
+final class TocIndexFile {
+    private static final int MAGIC = 0x78746f63;   // "xtoc"
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".xtoc";
+    private static final ChecksumAlgorithm DIGEST_ALGORITHM = ChecksumAlgorithm.SHA1;
+
+    private final Path file;
+    private final String archivePath;
+    private final long archiveSize;
+    private final long archiveModified;
+
+    /**
+     * Parts of the ToC needed to load an archive.
+     */
+    static final class Content {
+        final Date creationTime;
+        final TocChecksum checksum;
+        final byte[] tocChecksum;
+        final XarSignature signature;
+        final XarSignature xSignature;
+        final EntryTable entryTable;
+
+        Content(Date creationTime, TocChecksum checksum, byte[] tocChecksum, XarSignature signature, XarSignature xSignature, EntryTable entryTable) {
+            this.creationTime = creationTime;
+            this.checksum = checksum;
+            this.tocChecksum = tocChecksum;
+            this.signature = signature;
+            this.xSignature = xSignature;
+            this.entryTable = entryTable;
+        }
+    }
+
+    private TocIndexFile(Path file, String archivePath, long archiveSize, long archiveModified) {
+        this.file = file;
+        this.archivePath = archivePath;
+        this.archiveSize = archiveSize;
+        this.archiveModified = archiveModified;
+    }
+
+    /**
+     * Gets the index file of an archive.
+     *
+     * @param tocCache cache containing the index file
+     * @param archive  path of the archive file
+     * @return index file, which may not exist yet
+     * @throws IOException if attributes of the archive file cannot be read
+     */
+    static TocIndexFile of(TocCache tocCache, Path archive) throws IOException {
+        Path path = archive.toAbsolutePath().normalize();
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        byte[] hash = ChecksumAlgorithm.SHA1.getInstance().digest(path.toString().getBytes(StandardCharsets.UTF_8));
+
+        return new TocIndexFile(tocCache.getDirectory().resolve(DatatypeConverter.printHexBinary(hash).toLowerCase() + EXTENSION),
+                path.toString(), attrs.size(), attrs.lastModifiedTime().toMillis());
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the index.
+     *
+     * @param header header of the archive
+     * @return content of the index, or {@code null} if the index does not exist, or if it has been written for
+     * a different archive
+     * @throws IOException if an I/O error occurs, or if the index is corrupt
+     */
+    Content read(XarArchive.Header header) throws IOException {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        // The whole file is read at once, since all of it is copied into the entry table anyway
+        int length = data.length - DIGEST_ALGORITHM.getChecksumSize();
+        if ((length < 0) || !MessageDigest.isEqual(digest(data, length), Arrays.copyOfRange(data, length, data.length))) {
+            throw new IOException("Bad ToC index digest");
+        }
+
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data, 0, length))) {
+            if ((dis.readInt() != MAGIC) || (dis.readInt() != VERSION)
+                    || !archivePath.equals(dis.readUTF()) || (dis.readLong() != archiveSize) || (dis.readLong() != archiveModified)
+                    || (dis.readLong() != header.getTocLengthCompressed()) || (dis.readLong() != header.getTocLengthUncompressed())
+                    || (dis.readInt() != header.getChecksumAlgorithm().ordinal())) {
+                return null;
+            }
+
+            Date creationTime = dis.readBoolean() ? new Date(dis.readLong()) : null;
+            TocChecksum checksum = new TocChecksum(dis.readBoolean() ? dis.readUTF() : null, dis.readLong(), dis.readInt());
+            byte[] tocChecksum = readBytes(dis);
+
+            XarSignature signature = readSignature(dis);
+            XarSignature xSignature = readSignature(dis);
+            EntryTable entryTable = EntryTable.readFrom(dis);
+
+            return new Content(creationTime, checksum, tocChecksum, signature, xSignature, entryTable);
+        }
+    }
+
+    /**
+     * Writes the index, replacing the existing one.
+     *
+     * @param header  header of the archive
+     * @param content content of the index
+     * @throws IOException if an I/O error occurs
+     */
+    void write(XarArchive.Header header, Content content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmpFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+            try (DataOutputStream dos = new DataOutputStream(bos)) {
+                dos.writeInt(MAGIC);
+                dos.writeInt(VERSION);
+                dos.writeUTF(archivePath);
+                dos.writeLong(archiveSize);
+                dos.writeLong(archiveModified);
+                dos.writeLong(header.getTocLengthCompressed());
+                dos.writeLong(header.getTocLengthUncompressed());
+                dos.writeInt(header.getChecksumAlgorithm().ordinal());
+
+                dos.writeBoolean(content.creationTime != null);
+                if (content.creationTime != null) {
+                    dos.writeLong(content.creationTime.getTime());
+                }
+
+                dos.writeBoolean(content.checksum.getStyle() != null);
+                if (content.checksum.getStyle() != null) {
+                    dos.writeUTF(content.checksum.getStyle());
+                }
+
+                dos.writeLong(content.checksum.getOffset());
+                dos.writeInt(content.checksum.getSize());
+                dos.writeInt(content.tocChecksum.length);
+                dos.write(content.tocChecksum);
+
+                writeSignature(dos, content.signature);
+                writeSignature(dos, content.xSignature);
+                content.entryTable.writeTo(dos);
+            }
+
+            try (OutputStream os = Files.newOutputStream(tmpFile)) {
+                bos.writeTo(os);
+                os.write(digest(bos.toByteArray(), bos.size()));
+            }
+
+            // Readers see either the old index or the new one
+            try {
+                Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    private static XarSignature readSignature(DataInputStream dis) throws IOException {
+        if (!dis.readBoolean()) {
+            return null;
+        }
+
+        String style = dis.readUTF();
+        long offset = dis.readLong();
+        int size = dis.readInt();
+
+        List<X509Certificate> certificates = new ArrayList<>();
+        try {
+            CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+
+            int count = dis.readInt();
+            if ((count < 0) || (count > dis.available())) {
+                throw new IOException(MessageFormat.format("Invalid certificate count {0}", count));
+            }
+
+            for (int i = 0; i < count; i++) {
+                byte[] encoded = readBytes(dis);
+
+                try (InputStream is = new BufferedInputStream(new ByteArrayInputStream(encoded))) {
+                    certificates.add((X509Certificate) certificateFactory.generateCertificate(is));
+                }
+            }
+
+        } catch (CertificateException e) {
+            throw new IOException(e);
+        }
+
+        return new XarSignature(style, offset, size, new KeyInfo(new X509Data(certificates)));
+    }
+
+    /**
+     * Reads a byte array preceded by its length, which is checked against the remaining data.
+     */
+    private static byte[] readBytes(DataInputStream dis) throws IOException {
+        int length = dis.readInt();
+        if ((length < 0) || (length > dis.available())) {
+            throw new IOException(MessageFormat.format("Invalid field length {0}", length));
+        }
+
+        byte[] bytes = new byte[length];
+        dis.readFully(bytes);
+
+        return bytes;
+    }
+
+    private static byte[] digest(byte[] data, int length) {
+        MessageDigest md = DIGEST_ALGORITHM.getInstance();
+        md.update(data, 0, length);
+
+        return md.digest();
+    }
+
+    private static void writeSignature(DataOutputStream dos, XarSignature signature) throws IOException {
+        dos.writeBoolean(signature != null);
+
+        if (signature != null) {
+            dos.writeUTF(signature.getStyle());
+            dos.writeLong(signature.getOffset());
+            dos.writeInt(signature.getSize());
+
+            List<X509Certificate> certificates = signature.getKeyInfo().getX509Data().getCertificates();
+            dos.writeInt(certificates.size());
+
+            try {
+                for (X509Certificate certificate : certificates) {
+                    byte[] encoded = certificate.getEncoded();
+                    dos.writeInt(encoded.length);
+                    dos.write(encoded);
+                }
+
+            } catch (CertificateEncodingException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.impl.jaxb.ObjectFactory;
+import com.github.gino0631.xar.impl.jaxb.toc.*;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Streaming ToC reader, which fills the entry table directly without going through JAXB.
+ * <p>
+ * Elements not used by the library are skipped. Content which the reader does not understand results in
+ * {@link UnsupportedTocException}, in which case the ToC should be unmarshalled by {@link ObjectFactory#unmarshal(InputStream)}.
+ */
+final class TocReader {
+    private static final String XMLDSIG_NS = "http://www.w3.org/2000/09/xmldsig#";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY;
+    private static final CertificateFactory CERTIFICATE_FACTORY;
+
+    static {
+        XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+
+        try {
+            CERTIFICATE_FACTORY = CertificateFactory.getInstance("X.509");
+
+        } catch (CertificateException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static final class UnsupportedTocException extends IOException {
+        UnsupportedTocException(String message) {
+            super(message);
+        }
+
+        UnsupportedTocException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    private final XMLStreamReader reader;
+    private final EntryTable.Builder entries;
+
+    private TocReader(XMLStreamReader reader, EntryTable.Builder entries) {
+        this.reader = reader;
+        this.entries = entries;
+    }
+
+    /**
+     * Reads ToC.
+     *
+     * @param is      stream to read uncompressed ToC XML from
+     * @param entries builder to add ToC entries to
+     * @return ToC model without entries
+     * @throws UnsupportedTocException if the ToC has content not supported by this reader
+     */
+    static XarToc read(InputStream is, EntryTable.Builder entries) throws UnsupportedTocException {
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+
+            try {
+                return new TocReader(reader, entries).readDocument();
+
+            } finally {
+                reader.close();
+            }
+
+        } catch (XMLStreamException | RuntimeException e) {
+            throw new UnsupportedTocException(e);
+        }
+    }
+
+    private XarToc readDocument() throws XMLStreamException, UnsupportedTocException {
+        reader.nextTag();
+        if (!isElement("xar", null)) {
+            throw new UnsupportedTocException(MessageFormat.format("Unexpected root element {0}", reader.getName()));
+        }
+
+        XarToc toc = null;
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (isElement("toc", null)) {
+                toc = readToc();
+
+            } else {
+                skipElement();
+            }
+        }
+
+        if (toc == null) {
+            throw new UnsupportedTocException("No toc element");
+        }
+
+        return toc;
+    }
+
+    private XarToc readToc() throws XMLStreamException {
+        XarToc toc = new XarToc();
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (isElement("creation-time", null)) {
+                toc.setCreationTime(ObjectFactory.newXmlGregorianCalendar(readText().trim()));
+
+            } else if (isElement("checksum", null)) {
+                toc.setChecksum(readTocChecksum());
+
+            } else if (isElement("signature", null)) {
+                toc.setSignature(readSignature());
+
+            } else if (isElement("x-signature", null)) {
+                toc.setXSignature(readSignature());
+
+            } else if (isElement("file", null)) {
+                readFile(EntryTable.NONE);
+
+            } else {
+                skipElement();
+            }
+        }
+
+        return toc;
+    }
+
+    private TocChecksum readTocChecksum() throws XMLStreamException {
+        TocChecksum checksum = new TocChecksum();
+        checksum.setStyle(getAttribute("style"));
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (isElement("offset", null)) {
+                checksum.setOffset(readLong());
+
+            } else if (isElement("size", null)) {
+                checksum.setSize(readInt());
+
+            } else {
+                skipElement();
+            }
+        }
+
+        return checksum;
+    }
+
+    private XarSignature readSignature() throws XMLStreamException {
+        XarSignature signature = new XarSignature();
+        signature.setStyle(getAttribute("style"));
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (isElement("offset", null)) {
+                signature.setOffset(readLong());
+
+            } else if (isElement("size", null)) {
+                signature.setSize(readInt());
+
+            } else if (isElement("KeyInfo", XMLDSIG_NS)) {
+                signature.setKeyInfo(readKeyInfo());
+
+            } else {
+                skipElement();
+            }
+        }
+
+        return signature;
+    }
+
+    private KeyInfo readKeyInfo() throws XMLStreamException {
+        KeyInfo keyInfo = new KeyInfo();
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (isElement("X509Data", XMLDSIG_NS)) {
+                keyInfo.setX509Data(readX509Data());
+
+            } else {
+                skipElement();
+            }
+        }
+
+        return keyInfo;
+    }
+
+    private X509Data readX509Data() throws XMLStreamException {
+        List<X509Certificate> certificates = new ArrayList<>();
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (isElement("X509Certificate", XMLDSIG_NS)) {
+                certificates.add(readCertificate());
+
+            } else {
+                skipElement();
+            }
+        }
+
+        return new X509Data(certificates);
+    }
+
+    private void readFile(int parent) throws XMLStreamException {
+        int index = entries.add(parent, Long.parseLong(getAttribute("id").trim()));
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (isElement("name", null)) {
+                entries.setName(index, readText());
+
+            } else if (isElement("type", null)) {
+                entries.setType(index, toFileType(readText().trim()));
+
+            } else if (isElement("data", null)) {
+                readData(index);
+
+            } else if (isElement("file", null)) {
+                readFile(index);
+
+            } else {
+                skipElement();
+            }
+        }
+    }
+
+    private void readData(int index) throws XMLStreamException {
+        entries.setLength(index, 0);
+        entries.setOffset(index, 0);
+        entries.setSize(index, 0);
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (isElement("length", null)) {
+                entries.setLength(index, readLong());
+
+            } else if (isElement("offset", null)) {
+                entries.setOffset(index, readLong());
+
+            } else if (isElement("size", null)) {
+                entries.setSize(index, readLong());
+
+            } else if (isElement("encoding", null)) {
+                entries.setEncoding(index, getAttribute("style"));
+                skipElement();
+
+            } else if (isElement("archived-checksum", null)) {
+                String style = getAttribute("style");
+                entries.setArchivedChecksum(index, style, parseHex(readText()));
+
+            } else if (isElement("extracted-checksum", null)) {
+                String style = getAttribute("style");
+                entries.setExtractedChecksum(index, style, parseHex(readText()));
+
+            } else {
+                skipElement();
+            }
+        }
+    }
+
+    private X509Certificate readCertificate() throws XMLStreamException {
+        byte[] encoded = Base64.getMimeDecoder().decode(readText());
+
+        try {
+            return (X509Certificate) CERTIFICATE_FACTORY.generateCertificate(new ByteArrayInputStream(encoded));
+
+        } catch (CertificateException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private boolean isElement(String localName, String namespaceUri) {
+        String ns = reader.getNamespaceURI();
+
+        return localName.equals(reader.getLocalName())
+                && ((namespaceUri != null) ? namespaceUri.equals(ns) : ((ns == null) || ns.equals(XMLConstants.NULL_NS_URI)));
+    }
+
+    private String getAttribute(String localName) {
+        return reader.getAttributeValue(null, localName);
+    }
+
+    private String readText() throws XMLStreamException {
+        return reader.getElementText();
+    }
+
+    private long readLong() throws XMLStreamException {
+        return Long.parseLong(readText().trim());
+    }
+
+    private int readInt() throws XMLStreamException {
+        return Integer.parseInt(readText().trim());
+    }
+
+    private void skipElement() throws XMLStreamException {
+        for (int depth = 1; depth > 0; ) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+            }
+        }
+    }
+
+    private static FileType toFileType(String type) {
+        switch (type) {
+            case "file":
+                return FileType.FILE;
+
+            case "directory":
+                return FileType.DIRECTORY;
+
+            default:
+                return null;
+        }
+    }
+
+    private static byte[] parseHex(String s) {
+        int len = s.length();
+        if ((len % 2) != 0) {
+            throw new IllegalArgumentException(MessageFormat.format("Odd length of hex value {0}", s));
+        }
+
+        byte[] result = new byte[len / 2];
+        for (int i = 0; i < len; i += 2) {
+            result[i / 2] = (byte) ((hexDigit(s.charAt(i)) << 4) | hexDigit(s.charAt(i + 1)));
+        }
+
+        return result;
+    }
+
+    private static int hexDigit(char c) {
+        int d = Character.digit(c, 16);
+        if (d < 0) {
+            throw new IllegalArgumentException(MessageFormat.format("Invalid hex digit {0}", c));
+        }
+
+        return d;
+    }
+}
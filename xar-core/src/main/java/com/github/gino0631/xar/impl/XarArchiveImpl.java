@@ -1,6 +1,5 @@
 package com.github.gino0631.xar.impl;
 
-import com.github.gino0631.common.io.InputStreamSupplier;
 import com.github.gino0631.common.io.IoStreams;
 import com.github.gino0631.xar.ChecksumAlgorithm;
 import com.github.gino0631.xar.EncodingAlgorithm;
@@ -11,31 +10,64 @@ import com.github.gino0631.xar.impl.signature.AbstractSignature;
 import com.github.gino0631.xar.impl.signature.CmsSignature;
 import com.github.gino0631.xar.impl.signature.RsaSignature;
 import org.bouncycastle.tsp.TimeStampToken;
+import org.reactivestreams.Publisher;
 
 import jakarta.xml.bind.DatatypeConverter;
 import javax.xml.datatype.XMLGregorianCalendar;
 import java.io.*;
+import java.lang.invoke.MethodHandles;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.security.cert.X509Certificate;
 import java.text.MessageFormat;
 import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public final class XarArchiveImpl implements XarArchive {
-    private InputStreamSupplier streamSupplier;
+    private static final Logger logger = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    private static final int SIGNATURES_RESERVE = 16 * 1024;   // ToC checksum and signatures usually fit into it
+    private static final int MAX_READ_BATCH = 1024 * 1024;      // larger entries are streamed rather than buffered
+    private static final int MIN_READ_AHEAD = 1024 * 1024;      // smaller entries are not worth a background thread
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private volatile XarSource source;
+    private final Executor readAheadExecutor;
+    private final EntryCacheImpl entryCache;
+    private final Object cacheKey;
     private final Path tmpHeapFile;
     private final long heapOffset;
     private final HeaderImpl header;
     private final byte[] tocChecksum;
-    private final XarToc toc;
+    private final Date creationTime;
+    private final String tocChecksumStyle;
+    private final EntryTable entryTable;
     private final Path tocFile;
     private final SignatureImpl signature;
     private final SignatureImpl xSignature;
-    private final List<Entry> entries;
+    private volatile List<Entry> entries;
+    private volatile EntryIndex entryIndex;
+    private volatile List<Entry> entriesInHeapOrder;
+    private final Map<Integer, ZlibSeekIndex> seekIndexes = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    private interface IoSupplier<T> {
+        T get() throws IOException;
+    }
 
     static final class HeaderImpl implements Header {
         private static final int XAR_HEADER_MAGIC = 0x78617221;
@@ -231,7 +263,7 @@ public final class XarArchiveImpl implements XarArchive {
             if (signature == null) {
                 switch (getType()) {
                     case XarSignature.RSA:
-                        String checksumType = toc.getChecksum().getStyle();
+                        String checksumType = tocChecksumStyle;
                         ChecksumAlgorithm checksumAlgorithm = (checksumType != null) ? ChecksumAlgorithm.byType(checksumType) : ChecksumAlgorithm.SHA1;
                         Objects.requireNonNull(checksumAlgorithm, () -> MessageFormat.format("Unknown checksum type {0}", checksumType));
 
@@ -250,137 +282,558 @@ public final class XarArchiveImpl implements XarArchive {
     }
 
     final class EntryImpl implements Entry {
-        private final TocFile tocFile;
+        private final int index;
         private final Entry parent;
-        private final List<Entry> entries;
+        private volatile List<Entry> entries;
+        private String path;
 
-        EntryImpl(TocFile tocFile, Entry parent) {
-            this.tocFile = tocFile;
-            this.parent = parent;
+        EntryImpl(int index, Entry parent) {
+            this(index, parent, null);
+        }
 
-            entries = convert(this, tocFile.getFiles());
+        EntryImpl(int index, Entry parent, String path) {
+            this.index = index;
+            this.parent = parent;
+            this.path = path;
         }
 
         @Override
         public long getId() {
-            return tocFile.getId();
+            return entryTable.getId(index);
         }
 
         @Override
         public String getName() {
-            return tocFile.getName();
+            return entryTable.getName(index);
         }
 
         @Override
         public String getPath() {
-            return ((parent != null) ? parent.getPath() : "") + "/" + getName();
+            String path = this.path;
+            if (path == null) {
+                // Benign race: the value is immutable and always computed the same way
+                this.path = path = (parent != null) ? parent.getPath() + "/" + getName() : entryTable.getPath(index);
+            }
+
+            return path;
         }
 
         @Override
         public boolean isDirectory() {
-            return (tocFile.getType() == FileType.DIRECTORY);
+            return (entryTable.getType(index) == FileType.DIRECTORY);
         }
 
         @Override
         public long getSize() {
-            FileData data = tocFile.getData();
-
-            return (data != null) ? data.getSize() : -1;
+            return entryTable.hasData(index) ? entryTable.getSize(index) : -1;
         }
 
         @Override
         public long getCompressedSize() {
-            FileData data = tocFile.getData();
-
-            return (data != null) ? data.getLength() : -1;
+            return entryTable.hasData(index) ? entryTable.getLength(index) : -1;
         }
 
         @Override
         public InputStream newInputStream() throws IOException {
-            checkNotClosed();
+            XarSource source = getSource();
+
+            if (entryTable.hasData(index)) {
+                long length = entryTable.getLength(index);
+
+                if ((entryCache != null) && (entryTable.getSize(index) <= entryCache.getMaxEntrySize())) {
+                    byte[] data = getCachedData(source);
+                    if (data != null) {
+                        return new ByteArrayInputStream(data);
+                    }
+                }
+
+                return newInputStream(source.newInputStream(heapOffset + entryTable.getOffset(index), length), (length >= MIN_READ_AHEAD) ? readAheadExecutor : null);
+
+            } else {
+                return null;
+            }
+        }
+
+        /**
+         * Gets data of the entry from the cache, reading it into the cache if needed.
+         *
+         * @return data of the entry, or {@code null} if its length differs from the declared size, so it is not cached
+         */
+        private byte[] getCachedData(XarSource source) throws IOException {
+            byte[] data = entryCache.get(cacheKey, index);
+
+            if (data == null) {
+                long size = entryTable.getSize(index);
+
+                // Checksums are verified when the stream is closed, before the data gets into the cache
+                try (InputStream is = newInputStream(source.newInputStream(heapOffset + entryTable.getOffset(index), entryTable.getLength(index)), null)) {
+                    data = XarSource.readAvailable(is, (int) Math.min(size + 1, MAX_ARRAY_SIZE));
+                }
+
+                if (data.length != size) {
+                    return null;
+                }
+
+                entryCache.put(cacheKey, index, data);
+            }
+
+            return data;
+        }
+
+        @Override
+        public InputStream newInputStream(long offset) throws IOException {
+            XarSource source = getSource();
+
+            if (offset < 0) {
+                throw new IllegalArgumentException(MessageFormat.format("Negative offset {0}", offset));
+            }
+
+            if (entryTable.hasData(index)) {
+                long pos = heapOffset + entryTable.getOffset(index);
+                long length = entryTable.getLength(index);
+
+                if (getEncoding() == EncodingAlgorithm.NONE) {
+                    long start = Math.min(offset, length);
+
+                    return source.newInputStream(pos + start, length - start);
+                }
+
+                ZlibSeekIndex seekIndex = seekIndexes.get(index);
+                InputStream is = (seekIndex != null) ? seekIndex.newInputStream(source, pos, offset) : null;
+
+                if (is == null) {
+                    is = newInputStream(source.newInputStream(pos, length), null, false);
+
+                    try {
+                        IoStreams.waste(is, offset);
+
+                    } catch (IOException | RuntimeException e) {
+                        is.close();
+                        throw e;
+                    }
+                }
+
+                return is;
+
+            } else {
+                return null;
+            }
+        }
+
+        @Override
+        public SeekIndex createSeekIndex(long span) throws IOException {
+            ensureSeekable();
+
+            if (span <= 0) {
+                throw new IllegalArgumentException(MessageFormat.format("Invalid span {0}", span));
+            }
+
+            ChecksumAlgorithm extractedAlg = ChecksumAlgorithm.byType(entryTable.getExtractedChecksumStyle(index));
+            MessageDigest extractedDigest = ((extractedAlg != null) && (extractedAlg != ChecksumAlgorithm.NONE)) ? extractedAlg.getInstance() : null;
+            ZlibSeekIndex seekIndex;
+
+            // Archived data is verified when the stream is closed
+            try (InputStream is = newRawInputStream(true)) {
+                seekIndex = ZlibSeekIndex.build(is, entryTable.getLength(index), entryTable.getArchivedChecksum(index), span, extractedDigest);
+            }
+
+            if (extractedDigest != null) {
+                verifyChecksum(entryTable.getExtractedChecksum(index), extractedDigest.digest());
+            }
+
+            // Like a loaded index, the index must match the declared size, so that it can be saved and loaded again
+            if (!seekIndex.matches(entryTable.getLength(index), entryTable.getSize(index), entryTable.getArchivedChecksum(index))) {
+                throw new IOException(MessageFormat.format("Data of entry {0} does not match its size {1}", getPath(), entryTable.getSize(index)));
+            }
+
+            seekIndexes.put(index, seekIndex);
+
+            return seekIndex;
+        }
+
+        @Override
+        public SeekIndex loadSeekIndex(InputStream input) throws IOException {
+            ensureSeekable();
+
+            ZlibSeekIndex seekIndex = ZlibSeekIndex.read(input);
+            if (!seekIndex.matches(entryTable.getLength(index), entryTable.getSize(index), entryTable.getArchivedChecksum(index))) {
+                throw new IOException(MessageFormat.format("Seek index does not match entry {0}", getPath()));
+            }
+
+            seekIndexes.put(index, seekIndex);
+
+            return seekIndex;
+        }
+
+        @Override
+        public SeekIndex getSeekIndex() {
+            return seekIndexes.get(index);
+        }
+
+        private void ensureSeekable() {
+            if (!entryTable.hasData(index) || (getEncoding() != EncodingAlgorithm.ZLIB)) {
+                throw new UnsupportedOperationException(MessageFormat.format("Seek index is not supported for entry {0}", getPath()));
+            }
+        }
+
+        @Override
+        public EncodingAlgorithm getEncoding() {
+            String style = entryTable.hasData(index) ? entryTable.getEncodingStyle(index) : null;
+
+            return (style != null) ? EncodingAlgorithm.byType(style) : null;
+        }
+
+        @Override
+        public ChecksumAlgorithm getArchivedChecksumAlgorithm() {
+            String style = entryTable.hasData(index) ? entryTable.getArchivedChecksumStyle(index) : null;
+
+            return (style != null) ? ChecksumAlgorithm.byType(style) : null;
+        }
+
+        @Override
+        public byte[] getArchivedChecksum() {
+            return entryTable.hasData(index) ? entryTable.getArchivedChecksum(index) : null;
+        }
+
+        @Override
+        public InputStream newRawInputStream(boolean verify) throws IOException {
+            XarSource source = getSource();
+
+            if (entryTable.hasData(index)) {
+                InputStream is = source.newInputStream(heapOffset + entryTable.getOffset(index), entryTable.getLength(index));
+                ChecksumAlgorithm archivedAlg = getArchivedChecksumAlgorithm();
+
+                if (verify && (archivedAlg != null) && (archivedAlg != ChecksumAlgorithm.NONE)) {
+                    byte[] archivedChecksum = entryTable.getArchivedChecksum(index);
+
+                    return new XarInputStream(is, EncodingAlgorithm.NONE,
+                            archivedAlg, (c) -> verifyChecksum(archivedChecksum, c),
+                            ChecksumAlgorithm.NONE, null);
+
+                } else {
+                    return is;
+                }
+
+            } else {
+                return null;
+            }
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel target, boolean verify) throws IOException {
+            XarSource source = getSource();
+            XarSource.checkBlocking(target);
+
+            if (!entryTable.hasData(index)) {
+                return 0;
+            }
 
-            FileData data = tocFile.getData();
+            if (EncodingAlgorithm.byType(entryTable.getEncodingStyle(index)) == EncodingAlgorithm.NONE) {
+                long pos = heapOffset + entryTable.getOffset(index);
+                long length = entryTable.getLength(index);
 
-            if (data != null) {
-                String encStyle = data.getEncoding().getStyle();
-                EncodingAlgorithm encodingAlgorithm = EncodingAlgorithm.byType(encStyle);
-                if (encodingAlgorithm == null) {
-                    throw new IllegalArgumentException(MessageFormat.format("Unknown encoding algorithm {0}", encStyle));
+                if (verify) {
+                    verifyStored(source, pos, length);
                 }
 
-                DataChecksum archivedChecksum = data.getArchivedChecksum();
-                DataChecksum extractedChecksum = data.getExtractedChecksum();
+                source.transferTo(pos, length, target);
 
-                return new XarInputStream(streamSupplier.newInputStream(), heapOffset + data.getOffset(), data.getLength(), encodingAlgorithm,
-                        ChecksumAlgorithm.byType(archivedChecksum.getStyle()), (c) -> verifyChecksum(archivedChecksum.getValue(), c),
-                        ChecksumAlgorithm.byType(extractedChecksum.getStyle()), (c) -> verifyChecksum(extractedChecksum.getValue(), c));
+                return length;
+
+            } else {
+                long count = 0;
+                byte[] buf = new byte[TRANSFER_BUFFER_SIZE];
+
+                try (InputStream is = newInputStream()) {
+                    for (int n; (n = is.read(buf)) >= 0; ) {
+                        ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+                        while (bb.hasRemaining()) {
+                            target.write(bb);
+                        }
+
+                        count += n;
+                    }
+                }
+
+                return count;
+            }
+        }
+
+        @Override
+        public SeekableByteChannel newChannel() throws IOException {
+            XarSource source = getSource();
+
+            if (entryTable.hasData(index)) {
+                EncodingAlgorithm encodingAlgorithm = getEncoding();
+                if (encodingAlgorithm != EncodingAlgorithm.NONE) {
+                    throw new UnsupportedOperationException(MessageFormat.format("Random access is not supported for entries encoded with {0}",
+                            entryTable.getEncodingStyle(index)));
+                }
+
+                return new EntryChannel(source, heapOffset + entryTable.getOffset(index), entryTable.getLength(index));
 
             } else {
                 return null;
             }
         }
 
+        @Override
+        public void verify() throws IOException {
+            XarSource source = getSource();
+
+            if (!entryTable.hasData(index)) {
+                return;
+            }
+
+            if (getEncoding() == EncodingAlgorithm.NONE) {
+                verifyStored(source, heapOffset + entryTable.getOffset(index), entryTable.getLength(index));
+
+            } else {
+                // Checksums are verified when the stream is closed
+                try (InputStream is = newInputStream()) {
+                    is.skip(Long.MAX_VALUE);
+                }
+            }
+        }
+
+        private void verifyStored(XarSource source, long pos, long length) throws IOException {
+            ChecksumAlgorithm archivedAlg = ChecksumAlgorithm.byType(entryTable.getArchivedChecksumStyle(index));
+            ChecksumAlgorithm extractedAlg = ChecksumAlgorithm.byType(entryTable.getExtractedChecksumStyle(index));
+            MessageDigest archivedDigest = ((archivedAlg != null) && (archivedAlg != ChecksumAlgorithm.NONE)) ? archivedAlg.getInstance() : null;
+            MessageDigest extractedDigest = ((extractedAlg != null) && (extractedAlg != ChecksumAlgorithm.NONE)) ? extractedAlg.getInstance() : null;
+
+            // Stored data is both archived and extracted data
+            List<MessageDigest> digests = new ArrayList<>(2);
+            if (archivedDigest != null) {
+                digests.add(archivedDigest);
+            }
+            if (extractedDigest != null) {
+                digests.add(extractedDigest);
+            }
+
+            if (!digests.isEmpty()) {
+                source.digest(pos, length, digests.toArray(new MessageDigest[0]));
+
+                if (archivedDigest != null) {
+                    verifyChecksum(entryTable.getArchivedChecksum(index), archivedDigest.digest());
+                }
+
+                if (extractedDigest != null) {
+                    verifyChecksum(entryTable.getExtractedChecksum(index), extractedDigest.digest());
+                }
+            }
+        }
+
+        private InputStream newInputStream(InputStream archivedInput, Executor readAheadExecutor) throws IOException {
+            return newInputStream(archivedInput, readAheadExecutor, true);
+        }
+
+        private InputStream newInputStream(InputStream archivedInput, Executor readAheadExecutor, boolean verify) throws IOException {
+            String encStyle = entryTable.getEncodingStyle(index);
+            EncodingAlgorithm encodingAlgorithm = EncodingAlgorithm.byType(encStyle);
+            if (encodingAlgorithm == null) {
+                throw new IllegalArgumentException(MessageFormat.format("Unknown encoding algorithm {0}", encStyle));
+            }
+
+            byte[] archivedChecksum = entryTable.getArchivedChecksum(index);
+            byte[] extractedChecksum = entryTable.getExtractedChecksum(index);
+
+            if (!verify) {
+                return new XarInputStream(archivedInput, (encodingAlgorithm != EncodingAlgorithm.NONE) ? readAheadExecutor : null, encodingAlgorithm,
+                        ChecksumAlgorithm.NONE, null, ChecksumAlgorithm.NONE, null);
+            }
+
+            return new XarInputStream(archivedInput, (encodingAlgorithm != EncodingAlgorithm.NONE) ? readAheadExecutor : null, encodingAlgorithm,
+                    ChecksumAlgorithm.byType(entryTable.getArchivedChecksumStyle(index)), (c) -> verifyChecksum(archivedChecksum, c),
+                    ChecksumAlgorithm.byType(entryTable.getExtractedChecksumStyle(index)), (c) -> verifyChecksum(extractedChecksum, c));
+        }
+
+        @Override
+        public CompletableFuture<byte[]> readAsync(Executor executor) {
+            return supplyAsync(() -> {
+                if (!entryTable.hasData(index)) {
+                    getSource();   // fails if the archive is closed
+
+                    return new byte[0];
+                }
+
+                // Like the publisher, read up to the end of the data; the declared size is only a hint
+                int initialSize = (int) Math.min(entryTable.getSize(index), CodecPool.BUFFER_SIZE);
+                byte[] data;
+
+                // Checksums are verified when the stream is closed
+                try (InputStream is = newInputStream()) {
+                    data = XarSource.readAvailable(is, MAX_ARRAY_SIZE, initialSize);
+
+                    if ((data.length == MAX_ARRAY_SIZE) && (is.read() >= 0)) {
+                        throw new UnsupportedOperationException(MessageFormat.format("Entry {0} is too large to be read into an array", getPath()));
+                    }
+                }
+
+                return data;
+            }, executor);
+        }
+
+        @Override
+        public Publisher<ByteBuffer> publisher(int chunkSize, Executor executor) {
+            return new EntryPublisher(this, entryTable.hasData(index) ? entryTable.getSize(index) : 0, chunkSize, executor);
+        }
+
         @Override
         public List<Entry> getEntries() {
+            List<Entry> entries = this.entries;
+            if ((entries == null) && (entryTable.getFirstChild(index) != EntryTable.NONE)) {
+                synchronized (this) {
+                    entries = this.entries;
+                    if (entries == null) {
+                        this.entries = entries = convert(this, entryTable.getFirstChild(index));
+                    }
+                }
+            }
+
             return entries;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof EntryImpl) && (((EntryImpl) o).getArchive() == getArchive()) && (((EntryImpl) o).index == index);
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+
+        private XarArchiveImpl getArchive() {
+            return XarArchiveImpl.this;
+        }
     }
 
-    XarArchiveImpl(Path file) throws IOException {
-        this(InputStreamSupplier.of(file));
+    XarArchiveImpl(XarSource source) throws IOException {
+        this(source, null);
     }
 
-    XarArchiveImpl(InputStreamSupplier streamSupplier) throws IOException {
-        this.streamSupplier = streamSupplier;
+    XarArchiveImpl(XarSource source, Executor readAheadExecutor) throws IOException {
+        this(source, readAheadExecutor, null);
+    }
+
+    XarArchiveImpl(XarSource source, Executor readAheadExecutor, EntryCacheImpl entryCache) throws IOException {
+        this(source, readAheadExecutor, entryCache, null);
+    }
+
+    XarArchiveImpl(XarSource source, Executor readAheadExecutor, EntryCacheImpl entryCache, TocIndexFile tocIndexFile) throws IOException {
+        this.source = source;
+        this.readAheadExecutor = readAheadExecutor;
+        this.entryCache = entryCache;
 
         tmpHeapFile = null;
         tocFile = null;
 
-        try (InputStream fis = streamSupplier.newInputStream()) {
+        // Read header, ToC, ToC checksum and signatures at once
+        HeadBuffer head = new HeadBuffer(source);
+
+        try (InputStream fis = head.newInputStream(0, HeaderImpl.XAR_HEADER_SIZE)) {
             DataInputStream dis = new DataInputStream(fis);
             header = new HeaderImpl(dis);
         }
 
         heapOffset = header.getSize() + header.getTocLengthCompressed();
 
-        // Read ToC
+        // Read ToC, or its index
         {
-            ChecksumHolder computedChecksumHolder = new ChecksumHolder();
+            TocIndexFile.Content content = (tocIndexFile != null) ? readTocIndex(tocIndexFile, head) : null;
 
-            try (XarInputStream xis = new XarInputStream(streamSupplier.newInputStream(), header.getSize(), header.getTocLengthCompressed(), EncodingAlgorithm.ZLIB,
-                    header.getChecksumAlgorithm(), computedChecksumHolder,
-                    ChecksumAlgorithm.NONE, null)) {
+            if (content == null) {
+                content = readToc(head);
 
-                toc = ObjectFactory.unmarshal(xis).getToc();
+                if (tocIndexFile != null) {
+                    try {
+                        tocIndexFile.write(header, content);
+
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, MessageFormat.format("Cannot write ToC index {0}", tocIndexFile.getFile()), e);
+                    }
+                }
             }
 
-            TocChecksum checksumInfo = toc.getChecksum();
-            tocChecksum = read(heapOffset + checksumInfo.getOffset(), checksumInfo.getSize());
+            entryTable = content.entryTable;
+            creationTime = content.creationTime;
+            tocChecksumStyle = content.checksum.getStyle();
+            tocChecksum = content.tocChecksum;
+
+            // The ToC checksum covers offsets and checksums of all entries, so it identifies the archive content
+            cacheKey = (header.getChecksumAlgorithm() != ChecksumAlgorithm.NONE) ? ByteBuffer.wrap(tocChecksum) : this;
 
-            verifyChecksum(tocChecksum, computedChecksumHolder.getChecksum());
+            signature = convert(content.signature, head);
+            xSignature = convert(content.xSignature, head);
         }
+    }
+
+    private TocIndexFile.Content readToc(HeadBuffer head) throws IOException {
+        head.ensureLength(heapOffset + SIGNATURES_RESERVE);
+
+        ChecksumHolder computedChecksumHolder = new ChecksumHolder();
+        XarToc toc;
+        EntryTable entryTable;
 
-        signature = convert(toc.getSignature());
-        xSignature = convert(toc.getXSignature());
+        try (XarInputStream xis = newTocInputStream(head, computedChecksumHolder)) {
+            EntryTable.Builder entryTableBuilder = new EntryTable.Builder();
+            toc = TocReader.read(xis, entryTableBuilder);
+            entryTable = entryTableBuilder.build();
+
+        } catch (TocReader.UnsupportedTocException e) {
+            logger.log(Level.FINE, "Falling back to JAXB for reading ToC", e);
+
+            try (XarInputStream xis = newTocInputStream(head, computedChecksumHolder)) {
+                toc = ObjectFactory.unmarshal(xis).getToc();
+                entryTable = EntryTable.of(toc);
+            }
+        }
+
+        TocChecksum checksumInfo = toc.getChecksum();
+        byte[] tocChecksum = head.read(heapOffset + checksumInfo.getOffset(), checksumInfo.getSize());
+
+        verifyChecksum(tocChecksum, computedChecksumHolder.getChecksum());
+
+        return new TocIndexFile.Content(toDateUtc(toc.getCreationTime()), checksumInfo, tocChecksum,
+                toc.getSignature(), toc.getXSignature(), entryTable);
+    }
+
+    private TocIndexFile.Content readTocIndex(TocIndexFile tocIndexFile, HeadBuffer head) {
+        try {
+            TocIndexFile.Content content = tocIndexFile.read(header);
+
+            // The ToC is not read, so make sure that at least its stored checksum is the same
+            if ((content != null) && Arrays.equals(content.tocChecksum, head.read(heapOffset + content.checksum.getOffset(), content.checksum.getSize()))) {
+                return content;
+            }
+
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.FINE, MessageFormat.format("Ignoring unreadable ToC index {0}", tocIndexFile.getFile()), e);
+        }
 
-        entries = convert(null, toc.getFiles());
+        return null;
     }
 
     XarArchiveImpl(long tocLengthCompressed, long tocLengthUncompressed, ChecksumAlgorithm checksumAlgorithm, byte[] tocChecksum, XarToc toc, Path tocFile,
                    Path heapFile, long heapOffset, RsaSignature rsaSignature, CmsSignature cmsSignature) throws IOException {
         this.tocChecksum = tocChecksum;
-        this.toc = toc;
         this.tocFile = tocFile;
         this.heapOffset = heapOffset;
 
         tmpHeapFile = heapFile;
-        streamSupplier = InputStreamSupplier.of(heapFile);
+        source = new FileChannelXarSource(heapFile);
+        readAheadExecutor = null;
+        entryCache = null;
+        cacheKey = null;
         header = new HeaderImpl(tocLengthCompressed, tocLengthUncompressed, checksumAlgorithm);
 
+        creationTime = toDateUtc(toc.getCreationTime());
+        tocChecksumStyle = toc.getChecksum().getStyle();
+        entryTable = EntryTable.of(toc);
+
         signature = convert(toc.getSignature(), rsaSignature);
         xSignature = convert(toc.getXSignature(), cmsSignature);
-
-        entries = convert(null, toc.getFiles());
     }
 
     @Override
@@ -390,7 +843,7 @@ public final class XarArchiveImpl implements XarArchive {
 
     @Override
     public Date getCreationTime() {
-        return toDateUtc(toc.getCreationTime());
+        return (creationTime != null) ? (Date) creationTime.clone() : null;
     }
 
     @Override
@@ -405,15 +858,222 @@ public final class XarArchiveImpl implements XarArchive {
 
     @Override
     public List<Entry> getEntries() {
+        List<Entry> entries = this.entries;
+        if ((entries == null) && (entryTable.getFirstRoot() != EntryTable.NONE)) {
+            synchronized (entryTable) {
+                entries = this.entries;
+                if (entries == null) {
+                    this.entries = entries = convert(null, entryTable.getFirstRoot());
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    @Override
+    public Entry getEntry(String path, boolean ignoreCase) {
+        EntryIndex entryIndex = getEntryIndex();
+
+        return toEntry(entryIndex, entryIndex.findByPath(path.startsWith("/") ? path : "/" + path, ignoreCase));
+    }
+
+    @Override
+    public Entry getEntryById(long id) {
+        EntryIndex entryIndex = getEntryIndex();
+
+        return toEntry(entryIndex, entryIndex.findById(id));
+    }
+
+    @Override
+    public List<Entry> entriesUnder(String path) {
+        EntryIndex entryIndex = getEntryIndex();
+        int[] indexes = entryIndex.findUnder(path.startsWith("/") ? path : "/" + path);
+
+        List<Entry> result = new ArrayList<>(indexes.length);
+        for (int i : indexes) {
+            result.add(toEntry(entryIndex, i));
+        }
+
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public List<Entry> entriesInHeapOrder() {
+        List<Entry> entries = this.entriesInHeapOrder;
+        if (entries == null) {
+            synchronized (entryTable) {
+                entries = this.entriesInHeapOrder;
+                if (entries == null) {
+                    int[] indexes = entryTable.getHeapOrder();
+
+                    List<Entry> result = new ArrayList<>(indexes.length);
+                    for (int i : indexes) {
+                        result.add(new EntryImpl(i, null));
+                    }
+
+                    this.entriesInHeapOrder = entries = Collections.unmodifiableList(result);
+                }
+            }
+        }
+
         return entries;
     }
 
+    /**
+     * Reads data of all entries having it, in the order of their location in the heap, reading every part of the heap
+     * at most once.
+     * <p>
+     * Entries sharing a region of the heap (e.g. hard links, or deduplicated data) are read from a single copy of the
+     * region held in memory, so that sources which cannot go back can serve them all.
+     *
+     * @param handler handler to pass entry data to
+     * @throws IOException if an I/O error occurs, or if a checksum does not match
+     */
+    void readInHeapOrder(EntryHandler handler) throws IOException {
+        List<Entry> entries = entriesInHeapOrder();
+        XarSource source = getSource();
+
+        for (int first = 0, size = entries.size(); first < size; ) {
+            // Extend the region while the next entry overlaps it
+            long start = entryTable.getOffset(((EntryImpl) entries.get(first)).index);
+            long end = start + entryTable.getLength(((EntryImpl) entries.get(first)).index);
+            int last = first + 1;
+
+            for (; last < size; last++) {
+                int i = ((EntryImpl) entries.get(last)).index;
+                if (entryTable.getOffset(i) >= end) {
+                    break;
+                }
+
+                end = Math.max(end, entryTable.getOffset(i) + entryTable.getLength(i));
+            }
+
+            if (last - first == 1) {
+                Entry entry = entries.get(first);
+                try (InputStream is = entry.newInputStream()) {
+                    handler.handle(entry, is);
+                }
+
+            } else {
+                if (end - start > MAX_ARRAY_SIZE) {
+                    throw new IOException(MessageFormat.format("Shared heap region of {0} bytes is too large", end - start));
+                }
+
+                byte[] buf;
+                try (InputStream is = source.newInputStream(heapOffset + start, end - start)) {
+                    buf = XarSource.readAvailable(is, (int) (end - start));
+                }
+
+                if (buf.length < end - start) {
+                    throw new EOFException(MessageFormat.format("Heap should contain at least {0} bytes, but it does not", end));
+                }
+
+                for (int n = first; n < last; n++) {
+                    EntryImpl entry = (EntryImpl) entries.get(n);
+                    int off = (int) (entryTable.getOffset(entry.index) - start);
+
+                    try (InputStream is = entry.newInputStream(new ByteArrayInputStream(buf, off, (int) entryTable.getLength(entry.index)), null)) {
+                        handler.handle(entry, is);
+                    }
+                }
+            }
+
+            first = last;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> readAllAsync(Predicate<? super Entry> predicate, EntryHandler sink, Executor executor) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        execute(future, () -> {
+            List<Entry> entries = new ArrayList<>();
+            for (Entry entry : entriesInHeapOrder()) {
+                if (predicate.test(entry)) {
+                    entries.add(entry);
+                }
+            }
+
+            readAll(entries, (entry, input) -> {
+                if (future.isCancelled()) {
+                    throw new CancellationException();
+                }
+
+                sink.handle(entry, input);
+            });
+
+            return null;
+        }, executor);
+
+        return future;
+    }
+
+    @Override
+    public void readAll(Collection<Entry> entries, int maxGap, EntryHandler handler) throws IOException {
+        if (maxGap < 0) {
+            throw new IllegalArgumentException("Gap must not be negative");
+        }
+
+        List<EntryImpl> batch = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (!(entry instanceof EntryImpl) || (((EntryImpl) entry).getArchive() != this)) {
+                throw new IllegalArgumentException(MessageFormat.format("Entry {0} does not belong to the archive", entry.getPath()));
+            }
+
+            if (entryTable.hasData(((EntryImpl) entry).index)) {
+                batch.add((EntryImpl) entry);
+            }
+        }
+
+        batch.sort(Comparator.comparingLong(e -> entryTable.getOffset(e.index)));
+
+        XarSource source = getSource();
+        for (int first = 0, size = batch.size(); first < size; ) {
+            // Extend the range while the next entry is close enough, and the buffer does not grow too large
+            long start = entryTable.getOffset(batch.get(first).index);
+            long end = start + entryTable.getLength(batch.get(first).index);
+            int last = first + 1;
+
+            for (; last < size; last++) {
+                int i = batch.get(last).index;
+                long nextEnd = Math.max(end, entryTable.getOffset(i) + entryTable.getLength(i));
+                if ((entryTable.getOffset(i) - end > maxGap) || (nextEnd - start > MAX_READ_BATCH)) {
+                    break;
+                }
+
+                end = nextEnd;
+            }
+
+            if ((last - first == 1) && (end - start > MAX_READ_BATCH)) {
+                EntryImpl entry = batch.get(first);
+                try (InputStream is = entry.newInputStream()) {
+                    handler.handle(entry, is);
+                }
+
+            } else {
+                byte[] buf = source.read(heapOffset + start, (int) (end - start));
+
+                for (int n = first; n < last; n++) {
+                    EntryImpl entry = batch.get(n);
+                    int off = (int) (entryTable.getOffset(entry.index) - start);
+
+                    try (InputStream is = entry.newInputStream(new ByteArrayInputStream(buf, off, (int) entryTable.getLength(entry.index)), null)) {
+                        handler.handle(entry, is);
+                    }
+                }
+            }
+
+            first = last;
+        }
+    }
+
     @Override
     public void writeTo(OutputStream output) throws IOException {
-        checkNotClosed();
+        XarSource source = getSource();
 
         if (heapOffset > 0) {
-            IoStreams.copy(streamSupplier.newInputStream(), output);
+            source.writeTo(output);
 
         } else {
             // Write header
@@ -434,39 +1094,69 @@ public final class XarArchiveImpl implements XarArchive {
             }
 
             // Write heap
-            IoStreams.copy(streamSupplier.newInputStream(), output);
+            source.writeTo(output);
         }
     }
 
     @Override
-    public void close() {
-        if (streamSupplier != null) {
-            XarBuilderImpl.deleteTempFile(tocFile);
-            XarBuilderImpl.deleteTempFile(tmpHeapFile);
+    public synchronized void close() throws IOException {
+        if (source != null) {
+            try {
+                source.close();
 
-            streamSupplier = null;
+            } finally {
+                XarBuilderImpl.deleteTempFile(tocFile);
+                XarBuilderImpl.deleteTempFile(tmpHeapFile);
+
+                source = null;
+            }
         }
     }
 
-    private void checkNotClosed() {
-        if (streamSupplier == null) {
-            throw new IllegalStateException("The archive is closed");
+    private EntryIndex getEntryIndex() {
+        EntryIndex entryIndex = this.entryIndex;
+        if (entryIndex == null) {
+            synchronized (entryTable) {
+                entryIndex = this.entryIndex;
+                if (entryIndex == null) {
+                    this.entryIndex = entryIndex = new EntryIndex(entryTable);
+                }
+            }
         }
+
+        return entryIndex;
     }
 
-    private byte[] read(long pos, int cnt) throws IOException {
-        byte[] buf = new byte[cnt];
+    private Entry toEntry(EntryIndex entryIndex, int index) {
+        return (index != EntryTable.NONE) ? new EntryImpl(index, null, entryIndex.getPath(index)) : null;
+    }
+
+    private XarInputStream newTocInputStream(HeadBuffer head, ChecksumHolder computedChecksumHolder) throws IOException {
+        return new XarInputStream(head.newInputStream(header.getSize(), header.getTocLengthCompressed()), EncodingAlgorithm.ZLIB,
+                header.getChecksumAlgorithm(), computedChecksumHolder,
+                ChecksumAlgorithm.NONE, null);
+    }
 
-        try (InputStream is = streamSupplier.newInputStream()) {
-            IoStreams.skip(is, pos);
-            DataInputStream dis = new DataInputStream(is);
-            dis.readFully(buf);
+    private XarSource getSource() {
+        XarSource source = this.source;
+        if (source == null) {
+            throw new IllegalStateException("The archive is closed");
         }
 
-        return buf;
+        return source;
     }
 
-    private SignatureImpl convert(XarSignature xarSignature) throws IOException {
+    private byte[] read(long pos, int cnt) throws IOException {
+        return getSource().read(pos, cnt);
+    }
+
+    private SignatureImpl convert(XarSignature xarSignature, HeadBuffer head) throws IOException {
+        if ((xarSignature != null) && head.contains(heapOffset + xarSignature.getOffset(), xarSignature.getSize())) {
+            byte[] signatureData = head.read(heapOffset + xarSignature.getOffset(), xarSignature.getSize());
+
+            return new SignatureImpl(xarSignature, () -> signatureData);
+        }
+
         return (xarSignature != null) ? new SignatureImpl(xarSignature, () -> {
             try {
                 return read(heapOffset + xarSignature.getOffset(), xarSignature.getSize());
@@ -481,10 +1171,48 @@ public final class XarArchiveImpl implements XarArchive {
         return (xarSignature != null) ? new SignatureImpl(xarSignature, signature) : null;
     }
 
-    private List<Entry> convert(Entry parent, List<TocFile> children) {
-        return ((children != null) && (children.size() > 0)) ? Collections.unmodifiableList(children.stream()
-                .map(f -> new EntryImpl(f, parent))
-                .collect(Collectors.toCollection(() -> new ArrayList<>(children.size())))) : null;
+    private List<Entry> convert(Entry parent, int firstChild) {
+        if (firstChild == EntryTable.NONE) {
+            return null;
+        }
+
+        List<Entry> children = new ArrayList<>();
+        for (int i = firstChild; i != EntryTable.NONE; i = entryTable.getNextSibling(i)) {
+            children.add(new EntryImpl(i, parent));
+        }
+
+        ((ArrayList<Entry>) children).trimToSize();
+
+        return Collections.unmodifiableList(children);
+    }
+
+    private static <T> CompletableFuture<T> supplyAsync(IoSupplier<T> supplier, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        execute(future, supplier, executor);
+
+        return future;
+    }
+
+    /**
+     * Completes a future with the result of a task run by an executor. Unlike {@link CompletableFuture#supplyAsync},
+     * this lets checked exceptions complete the future as they are, and skips the task if the future is already done.
+     */
+    private static <T> void execute(CompletableFuture<T> future, IoSupplier<T> supplier, Executor executor) {
+        try {
+            executor.execute(() -> {
+                if (!future.isDone()) {
+                    try {
+                        future.complete(supplier.get());
+
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
     }
 
     private static void verifyChecksum(byte[] expected, byte[] actual) throws IOException {
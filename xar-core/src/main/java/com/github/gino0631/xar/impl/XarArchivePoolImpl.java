@@ -0,0 +1,236 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.XarArchive;
+import com.github.gino0631.xar.XarArchivePool;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Archive pool, which keeps archives in an LRU map and counts their leases.
+ * <p>
+ * The map and the lease counts are guarded by the pool lock, which is never held while an archive is loaded or closed;
+ * an archive is loaded by the first lease holder, under the lock of its handle, so that loading one archive does not
+ * block acquisitions of others.
+ */
+final class XarArchivePoolImpl implements XarArchivePool {
+    private static final Logger logger = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+    private final int maxOpen;
+    private final XarArchive.LoadOption[] options;
+    private final Map<Path, Handle> handles = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private boolean closed;
+
+    private final class Handle {
+        private final Path file;
+        private XarArchive archive;
+        private int leaseCount;     // guarded by the pool lock
+        private boolean evicted;    // guarded by the pool lock
+
+        Handle(Path file) {
+            this.file = file;
+        }
+
+        synchronized XarArchive load() throws IOException {
+            if (archive == null) {
+                archive = XarArchive.load(file, options);
+                openCount.incrementAndGet();
+            }
+
+            return archive;
+        }
+
+        synchronized void close() {
+            if (archive != null) {
+                try {
+                    archive.close();
+
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, MessageFormat.format("Error closing {0}", file), e);
+                }
+
+                archive = null;
+                openCount.decrementAndGet();
+            }
+        }
+    }
+
+    private final class LeaseImpl implements Lease {
+        private final Handle handle;
+        private final XarArchive archive;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        LeaseImpl(Handle handle, XarArchive archive) {
+            this.handle = handle;
+            this.archive = archive;
+        }
+
+        @Override
+        public XarArchive getArchive() {
+            if (released.get()) {
+                throw new IllegalStateException("Lease has been released");
+            }
+
+            return archive;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                release(handle);
+            }
+        }
+    }
+
+    XarArchivePoolImpl(int maxOpen, XarArchive.LoadOption[] options) {
+        if (maxOpen < 1) {
+            throw new IllegalArgumentException(MessageFormat.format("Invalid maximum number of open archives {0}", maxOpen));
+        }
+
+        this.maxOpen = maxOpen;
+        this.options = options.clone();
+    }
+
+    @Override
+    public Lease acquire(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        Handle handle;
+
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Pool is closed");
+            }
+
+            handle = handles.get(key);
+            if (handle == null) {
+                handle = new Handle(key);
+                handles.put(key, handle);
+                misses.increment();
+
+            } else {
+                hits.increment();
+            }
+
+            handle.leaseCount++;
+        }
+
+        XarArchive archive;
+        try {
+            archive = handle.load();
+
+        } catch (IOException | RuntimeException e) {
+            // Do not keep the failure, but let other holders of the handle use an archive they may have loaded
+            synchronized (this) {
+                if (handles.remove(key, handle)) {
+                    handle.evicted = true;
+                }
+            }
+
+            release(handle);
+            throw e;
+        }
+
+        // Evict only once the archive is loaded, so that failures to load do not evict other archives
+        List<Handle> evicted;
+        synchronized (this) {
+            evicted = evict();
+        }
+
+        evicted.forEach(Handle::close);
+
+        return new LeaseImpl(handle, archive);
+    }
+
+    @Override
+    public int getMaxOpen() {
+        return maxOpen;
+    }
+
+    @Override
+    public int getOpenCount() {
+        return openCount.get();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public void close() {
+        List<Handle> idle = new ArrayList<>();
+
+        synchronized (this) {
+            closed = true;
+
+            for (Handle handle : handles.values()) {
+                handle.evicted = true;
+                if (handle.leaseCount == 0) {
+                    idle.add(handle);
+                }
+            }
+
+            handles.clear();
+        }
+
+        idle.forEach(Handle::close);
+    }
+
+    private void release(Handle handle) {
+        boolean close;
+
+        synchronized (this) {
+            close = (--handle.leaseCount == 0) && (handle.evicted || closed);
+        }
+
+        if (close) {
+            handle.close();
+        }
+    }
+
+    /**
+     * Removes least recently used handles over the limit, and returns those which can be closed right away.
+     */
+    private List<Handle> evict() {
+        List<Handle> idle = new ArrayList<>();
+
+        for (Iterator<Handle> it = handles.values().iterator(); (handles.size() > maxOpen) && it.hasNext(); ) {
+            Handle handle = it.next();
+            it.remove();
+            handle.evicted = true;
+            evictions.increment();
+
+            if (handle.leaseCount == 0) {
+                idle.add(handle);
+            }
+        }
+
+        return idle;
+    }
+}
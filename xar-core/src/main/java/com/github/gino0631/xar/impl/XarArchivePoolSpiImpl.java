@@ -0,0 +1,12 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.XarArchive;
+import com.github.gino0631.xar.XarArchivePool;
+import com.github.gino0631.xar.spi.XarArchivePoolSpi;
+
+public final class XarArchivePoolSpiImpl implements XarArchivePoolSpi {
+    @Override
+    public XarArchivePool create(int maxOpen, XarArchive.LoadOption... options) {
+        return new XarArchivePoolImpl(maxOpen, options);
+    }
+}
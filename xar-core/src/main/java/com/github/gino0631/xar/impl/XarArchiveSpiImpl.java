@@ -1,20 +1,59 @@
 package com.github.gino0631.xar.impl;
 
 import com.github.gino0631.common.io.InputStreamSupplier;
+import com.github.gino0631.xar.ReadAheadExecutor;
+import com.github.gino0631.xar.StandardLoadOption;
+import com.github.gino0631.xar.TocCache;
 import com.github.gino0631.xar.XarArchive;
 import com.github.gino0631.xar.spi.XarArchiveSpi;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 public final class XarArchiveSpiImpl implements XarArchiveSpi {
     @Override
-    public XarArchive load(Path file) throws IOException {
-        return new XarArchiveImpl(file);
+    public XarArchive load(Path file, XarArchive.LoadOption... options) throws IOException {
+        List<XarArchive.LoadOption> optionList = Arrays.asList(options);
+        boolean memoryMap = optionList.contains(StandardLoadOption.MEMORY_MAP);
+        Executor readAheadExecutor = optionList.contains(StandardLoadOption.READ_AHEAD) ? ReadAheadInputStream.DEFAULT_EXECUTOR : null;
+        EntryCacheImpl entryCache = null;
+        TocIndexFile tocIndexFile = null;
+
+        for (XarArchive.LoadOption option : options) {
+            if (option instanceof EntryCacheImpl) {
+                entryCache = (EntryCacheImpl) option;
+
+            } else if (option instanceof ReadAheadExecutor) {
+                readAheadExecutor = ((ReadAheadExecutor) option).getExecutor();
+
+            } else if (option instanceof TocCache) {
+                tocIndexFile = TocIndexFile.of((TocCache) option, file);
+
+            } else if (!(option instanceof StandardLoadOption)) {
+                // e.g. an EntryCache not created by EntryCache.create()
+                throw new IllegalArgumentException(MessageFormat.format("Unsupported load option {0}", option));
+            }
+        }
+
+        return load(memoryMap ? new MappedXarSource(file) : new FileChannelXarSource(file), readAheadExecutor, entryCache, tocIndexFile);
     }
 
     @Override
     public XarArchive load(InputStreamSupplier streamSupplier) throws IOException {
-        return new XarArchiveImpl(streamSupplier);
+        return load(new StreamXarSource(streamSupplier), null, null, null);
+    }
+
+    private static XarArchive load(XarSource source, Executor readAheadExecutor, EntryCacheImpl entryCache, TocIndexFile tocIndexFile) throws IOException {
+        try {
+            return new XarArchiveImpl(source, readAheadExecutor, entryCache, tocIndexFile);
+
+        } catch (IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
     }
 }
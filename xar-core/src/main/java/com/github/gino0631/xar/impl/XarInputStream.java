@@ -1,21 +1,39 @@
 package com.github.gino0631.xar.impl;
 
-import com.github.gino0631.common.io.IoStreams;
 import com.github.gino0631.xar.ChecksumAlgorithm;
 import com.github.gino0631.xar.EncodingAlgorithm;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
-import java.text.MessageFormat;
-
+import java.util.concurrent.Executor;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Stream reading entry data, which decodes it and computes its checksums in a single stage.
+ * <p>
+ * Archived data is read into one pooled buffer, digested in bulk, and inflated straight into the caller's array,
+ * where extracted data is digested in place; reads do not allocate.
+ */
 final class XarInputStream extends InputStream {
+    private static final int SKIP_BUFFER_SIZE = 8192;
+
     private final InputStream inputStream;
     private final MessageDigest archivedChecksumMessageDigest;
     private final MessageDigest extractedChecksumMessageDigest;
     private final ChecksumVerifier archivedChecksumVerifier;
     private final ChecksumVerifier extractedChecksumVerifier;
+    private final Inflater inflater;
+    private final boolean inflating;            // whether inflation is done by this stream, rather than by the input
+    private final boolean digestingArchived;    // whether archived data is digested by this stream, rather than by the input
+    private final byte[] inputBuffer;
+    private final byte[] singleByte = new byte[1];
+    private byte[] skipBuffer;
+    private boolean eof;
     private boolean closed;
 
     @FunctionalInterface
@@ -23,63 +41,117 @@ final class XarInputStream extends InputStream {
         void verify(byte[] checksum) throws IOException;
     }
 
-    XarInputStream(InputStream is, long pos, long length, EncodingAlgorithm encodingAlgorithm,
+    XarInputStream(InputStream is, EncodingAlgorithm encodingAlgorithm,
+                   ChecksumAlgorithm archivedChecksumAlgorithm, ChecksumVerifier archivedChecksumVerifier,
+                   ChecksumAlgorithm extractedChecksumAlgorithm, ChecksumVerifier extractedChecksumVerifier) throws IOException {
+
+        this(is, null, encodingAlgorithm, archivedChecksumAlgorithm, archivedChecksumVerifier, extractedChecksumAlgorithm, extractedChecksumVerifier);
+    }
+
+    XarInputStream(InputStream is, Executor readAheadExecutor, EncodingAlgorithm encodingAlgorithm,
                    ChecksumAlgorithm archivedChecksumAlgorithm, ChecksumVerifier archivedChecksumVerifier,
                    ChecksumAlgorithm extractedChecksumAlgorithm, ChecksumVerifier extractedChecksumVerifier) throws IOException {
 
         this.archivedChecksumVerifier = archivedChecksumVerifier;
         this.extractedChecksumVerifier = extractedChecksumVerifier;
 
-        if (IoStreams.skip(is, pos) != pos) {
-            throw new IOException(MessageFormat.format("Stream should contain at least {0} bytes, but it does not", pos + length));
-        }
-
-        is = IoStreams.limit(is, length);
+        // Checksum calculators
+        archivedChecksumMessageDigest = (archivedChecksumAlgorithm != ChecksumAlgorithm.NONE) ? archivedChecksumAlgorithm.getInstance() : null;
+        extractedChecksumMessageDigest = (extractedChecksumAlgorithm != ChecksumAlgorithm.NONE) ? extractedChecksumAlgorithm.getInstance() : null;
+
+        boolean zlib = (encodingAlgorithm == EncodingAlgorithm.ZLIB);
+        Inflater inflater = zlib ? CodecPool.acquireInflater() : null;
+
+        // The inflater is returned to the pool by close(), which is not called if construction fails
+        try {
+            if (zlib && (readAheadExecutor == null) && (is instanceof ByteBufferInput)) {
+                // Digest and inflate archived data directly from buffers of the source
+                is = new BufferInflaterInputStream((ByteBufferInput) is, inflater, archivedChecksumMessageDigest);
+                inflating = false;
+                digestingArchived = false;
+
+            } else if (readAheadExecutor != null) {
+                // Read and digest archived data in the background, leaving only decoding to the caller
+                is = new ReadAheadInputStream(is, archivedChecksumMessageDigest, readAheadExecutor);
+                inflating = zlib;
+                digestingArchived = false;
+
+            } else {
+                inflating = zlib;
+                digestingArchived = (archivedChecksumMessageDigest != null);
+            }
 
-        // Archived data checksum calculator
-        if (archivedChecksumAlgorithm != ChecksumAlgorithm.NONE) {
-            archivedChecksumMessageDigest = archivedChecksumAlgorithm.getInstance();
-            is = new DigestInputStream(is, archivedChecksumMessageDigest);
+            if (!zlib && (encodingAlgorithm != EncodingAlgorithm.NONE)) {
+                // Generic decoder, which needs archived data to be digested before it
+                if (digestingArchived) {
+                    is = new DigestInputStream(is, archivedChecksumMessageDigest);
+                }
 
-        } else {
-            archivedChecksumMessageDigest = null;
-        }
+                is = encodingAlgorithm.getDecoder(is);
+            }
 
-        // Decoder
-        if (encodingAlgorithm != EncodingAlgorithm.NONE) {
-            is = encodingAlgorithm.getDecoder(is);
-        }
+            inputStream = is;
+            inputBuffer = inflating ? CodecPool.acquireBuffer() : null;
 
-        // Extracted data checksum calculator
-        if (extractedChecksumAlgorithm != ChecksumAlgorithm.NONE) {
-            extractedChecksumMessageDigest = extractedChecksumAlgorithm.getInstance();
-            is = new DigestInputStream(is, extractedChecksumMessageDigest);
+        } catch (RuntimeException e) {
+            if (inflater != null) {
+                CodecPool.releaseInflater(inflater);
+            }
 
-        } else {
-            extractedChecksumMessageDigest = null;
+            throw e;
         }
 
-        inputStream = is;
+        this.inflater = inflater;
     }
 
     @Override
     public int read() throws IOException {
-        return inputStream.read();
+        return (read(singleByte, 0, 1) == 1) ? singleByte[0] & 0xff : -1;
     }
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        return inputStream.read(b, off, len);
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        int n = inflating ? inflate(b, off, len) : readDirect(b, off, len);
+
+        if ((n > 0) && (extractedChecksumMessageDigest != null)) {
+            extractedChecksumMessageDigest.update(b, off, n);
+        }
+
+        return n;
     }
 
     @Override
     public long skip(long n) throws IOException {
-        return IoStreams.waste(inputStream, n);     // because DigestInputStream.skip() does not update digest
+        // Skipped data must be digested as well, so it is read into a buffer reused by subsequent calls
+        if (skipBuffer == null) {
+            skipBuffer = new byte[SKIP_BUFFER_SIZE];
+        }
+
+        long remaining = n;
+        for (int r; (remaining > 0) && ((r = read(skipBuffer, 0, (int) Math.min(skipBuffer.length, remaining))) >= 0); ) {
+            remaining -= r;
+        }
+
+        return n - remaining;
     }
 
     @Override
     public int available() throws IOException {
-        return inputStream.available();
+        if (inflating) {
+            // Like InflaterInputStream, report that more data may follow until the end has been reached
+            return eof ? 0 : 1;
+
+        } else {
+            return inputStream.available();
+        }
     }
 
     @Override
@@ -88,7 +160,7 @@ final class XarInputStream extends InputStream {
             try {
                 if ((archivedChecksumVerifier != null) || (extractedChecksumVerifier != null)) {
                     if (available() > 0) {
-                        IoStreams.exhaust(this);
+                        skip(Long.MAX_VALUE);
                     }
 
                     if (archivedChecksumVerifier != null) {
@@ -102,8 +174,60 @@ final class XarInputStream extends InputStream {
 
             } finally {
                 closed = true;
-                inputStream.close();
+
+                try {
+                    inputStream.close();
+
+                } finally {
+                    if (inflater != null) {
+                        CodecPool.releaseInflater(inflater);
+                    }
+
+                    if (inputBuffer != null) {
+                        CodecPool.releaseBuffer(inputBuffer);
+                    }
+                }
+            }
+        }
+    }
+
+    private int readDirect(byte[] b, int off, int len) throws IOException {
+        int n = inputStream.read(b, off, len);
+
+        if ((n > 0) && digestingArchived) {
+            archivedChecksumMessageDigest.update(b, off, n);
+        }
+
+        return n;
+    }
+
+    private int inflate(byte[] b, int off, int len) throws IOException {
+        while (!eof) {
+            int n;
+            try {
+                n = inflater.inflate(b, off, len);
+
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+
+            if (n > 0) {
+                return n;
+            }
+
+            if (inflater.finished() || inflater.needsDictionary()) {
+                eof = true;
+
+            } else if (inflater.needsInput()) {
+                int r = readDirect(inputBuffer, 0, inputBuffer.length);
+                if (r < 0) {
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+
+                inflater.setInput(inputBuffer, 0, r);
             }
         }
+
+        return -1;
     }
 }
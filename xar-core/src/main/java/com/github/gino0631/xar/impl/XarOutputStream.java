@@ -1,24 +1,33 @@
 package com.github.gino0631.xar.impl;
 
-import com.github.gino0631.common.io.IoStreams;
 import com.github.gino0631.xar.ChecksumAlgorithm;
 import com.github.gino0631.xar.EncodingAlgorithm;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.security.DigestOutputStream;
 import java.security.MessageDigest;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
-
+import java.util.zip.Deflater;
+
+/**
+ * Stream writing entry data, which encodes it, computes its checksums and counts its sizes in a single stage.
+ * <p>
+ * Small writes are collected in a pooled buffer and processed in bulk; the output is the same as that of
+ * a {@link java.util.zip.DeflaterOutputStream} with a default {@link Deflater}.
+ */
 final class XarOutputStream extends OutputStream {
     private final OutputStream outputStream;
     private final MessageDigest archivedChecksumMessageDigest;
     private final MessageDigest extractedChecksumMessageDigest;
     private final ChecksumConsumer archivedChecksumConsumer;
     private final ChecksumConsumer extractedChecksumConsumer;
-    private final AtomicLong archivedSize = new AtomicLong();
-    private final AtomicLong extractedSize = new AtomicLong();
+    private final Deflater deflater;
+    private final OutputStream encoder;         // generic encoder, if the encoding is not handled by this stream
+    private final byte[] inputBuffer;
+    private final byte[] outputBuffer;
+    private int inputLength;
+    private long archivedSize;
+    private long extractedSize;
     private boolean closed;
 
     @FunctionalInterface
@@ -32,63 +41,116 @@ final class XarOutputStream extends OutputStream {
         this.archivedChecksumConsumer = archivedChecksumConsumer;
         this.extractedChecksumConsumer = extractedChecksumConsumer;
 
-        os = IoStreams.count(os, archivedSize::addAndGet);
-
-        // Archived data checksum calculator
-        if (archivedChecksumAlgorithm != ChecksumAlgorithm.NONE) {
-            archivedChecksumMessageDigest = archivedChecksumAlgorithm.getInstance();
-            os = new DigestOutputStream(os, archivedChecksumMessageDigest);
+        // Checksum calculators
+        archivedChecksumMessageDigest = (archivedChecksumAlgorithm != ChecksumAlgorithm.NONE) ? archivedChecksumAlgorithm.getInstance() : null;
+        extractedChecksumMessageDigest = (extractedChecksumAlgorithm != ChecksumAlgorithm.NONE) ? extractedChecksumAlgorithm.getInstance() : null;
 
-        } else {
-            archivedChecksumMessageDigest = null;
-        }
+        outputStream = os;
+        inputBuffer = CodecPool.acquireBuffer();
 
         // Encoder
-        if (encodingAlgorithm != EncodingAlgorithm.NONE) {
-            os = encodingAlgorithm.getEncoder(os);
-        }
+        if (encodingAlgorithm == EncodingAlgorithm.ZLIB) {
+            deflater = CodecPool.acquireDeflater();
+            outputBuffer = CodecPool.acquireBuffer();
+            encoder = null;
 
-        // Original data checksum calculator
-        if (extractedChecksumAlgorithm != ChecksumAlgorithm.NONE) {
-            extractedChecksumMessageDigest = extractedChecksumAlgorithm.getInstance();
-            os = new DigestOutputStream(os, extractedChecksumMessageDigest);
+        } else if (encodingAlgorithm != EncodingAlgorithm.NONE) {
+            deflater = null;
+            outputBuffer = null;
+            encoder = encodingAlgorithm.getEncoder(new ArchivedOutputStream());
 
         } else {
-            extractedChecksumMessageDigest = null;
+            deflater = null;
+            outputBuffer = null;
+            encoder = null;
         }
-
-        outputStream = IoStreams.count(os, extractedSize::addAndGet);
     }
 
     public long getArchivedSize() {
-        return archivedSize.get();
+        return archivedSize;
     }
 
     public long getExtractedSize() {
-        return extractedSize.get();
+        return extractedSize;
     }
 
     @Override
     public void write(int b) throws IOException {
-        outputStream.write(b);
+        ensureOpen();
+
+        if (inputLength == inputBuffer.length) {
+            drain();
+        }
+
+        inputBuffer[inputLength++] = (byte) b;
     }
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        outputStream.write(b, off, len);
+        ensureOpen();
+
+        if (len <= inputBuffer.length - inputLength) {
+            System.arraycopy(b, off, inputBuffer, inputLength, len);
+            inputLength += len;
+
+        } else {
+            drain();
+
+            if (len < inputBuffer.length) {
+                System.arraycopy(b, off, inputBuffer, 0, len);
+                inputLength = len;
+
+            } else {
+                process(b, off, len);
+            }
+        }
     }
 
     @Override
     public void flush() throws IOException {
-        outputStream.flush();
+        ensureOpen();
+        drain();
+
+        if (encoder != null) {
+            encoder.flush();
+
+        } else {
+            outputStream.flush();
+        }
     }
 
     @Override
     public void close() throws IOException {
         if (!closed) {
-            outputStream.close();
             closed = true;
 
+            try {
+                process(inputBuffer, 0, inputLength);
+                inputLength = 0;
+
+                if (deflater != null) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        deflate();
+                    }
+                }
+
+                if (encoder != null) {
+                    encoder.close();
+
+                } else {
+                    outputStream.close();
+                }
+
+            } finally {
+                CodecPool.releaseBuffer(inputBuffer);
+
+                if (deflater != null) {
+                    CodecPool.releaseDeflater(deflater);
+                    CodecPool.releaseBuffer(outputBuffer);
+                }
+            }
+
             if (archivedChecksumConsumer != null) {
                 archivedChecksumConsumer.accept(archivedChecksumMessageDigest.digest());
             }
@@ -98,4 +160,83 @@ final class XarOutputStream extends OutputStream {
             }
         }
     }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            // The deflater and buffers may already be used by another stream
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void drain() throws IOException {
+        if (inputLength > 0) {
+            process(inputBuffer, 0, inputLength);
+            inputLength = 0;
+        }
+    }
+
+    private void process(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+
+        extractedSize += len;
+        if (extractedChecksumMessageDigest != null) {
+            extractedChecksumMessageDigest.update(b, off, len);
+        }
+
+        if (deflater != null) {
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+
+        } else if (encoder != null) {
+            encoder.write(b, off, len);
+
+        } else {
+            writeArchived(b, off, len);
+        }
+    }
+
+    private void deflate() throws IOException {
+        int n = deflater.deflate(outputBuffer, 0, outputBuffer.length);
+        if (n > 0) {
+            writeArchived(outputBuffer, 0, n);
+        }
+    }
+
+    private void writeArchived(byte[] b, int off, int len) throws IOException {
+        archivedSize += len;
+        if (archivedChecksumMessageDigest != null) {
+            archivedChecksumMessageDigest.update(b, off, len);
+        }
+
+        outputStream.write(b, off, len);
+    }
+
+    /**
+     * Target of a generic encoder, which digests and counts archived data.
+     */
+    private final class ArchivedOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeArchived(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            outputStream.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            outputStream.close();
+        }
+    }
 }
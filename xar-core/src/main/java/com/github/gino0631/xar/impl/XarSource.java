@@ -0,0 +1,193 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.common.io.Writable;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Source of archive data, addressed by absolute position.
+ */
+interface XarSource extends Writable, Closeable {
+    /**
+     * Opens a stream reading a region of the source.
+     *
+     * @param pos    position of the region
+     * @param length length of the region
+     * @return input stream, which ends at the end of the region
+     * @throws IOException if an I/O error occurs
+     */
+    InputStream newInputStream(long pos, long length) throws IOException;
+
+    /**
+     * Reads a region of the source fully.
+     *
+     * @param pos position of the region
+     * @param cnt length of the region
+     * @return bytes read
+     * @throws IOException if an I/O error occurs, or if the source is too short
+     */
+    default byte[] read(long pos, int cnt) throws IOException {
+        byte[] buf = readAvailable(pos, cnt);
+        if (buf.length < cnt) {
+            throw new EOFException();
+        }
+
+        return buf;
+    }
+
+    /**
+     * Reads a region of the source, stopping early at the end of the source.
+     *
+     * @param pos position of the region
+     * @param cnt maximum length of the region
+     * @return bytes read
+     * @throws IOException if an I/O error occurs
+     */
+    default byte[] readAvailable(long pos, int cnt) throws IOException {
+        try (InputStream is = newInputStream(pos, cnt)) {
+            return readAvailable(is, cnt);
+        }
+    }
+
+    /**
+     * Reads a stream up to the specified number of bytes.
+     * <p>
+     * The buffer grows as data arrives, so a length coming from untrusted data does not cause a big allocation for a
+     * short stream.
+     *
+     * @param is  stream to read
+     * @param cnt maximum number of bytes to read
+     * @return bytes read
+     * @throws IOException if an I/O error occurs
+     */
+    static byte[] readAvailable(InputStream is, int cnt) throws IOException {
+        return readAvailable(is, cnt, CodecPool.BUFFER_SIZE);
+    }
+
+    /**
+     * Reads a stream up to the specified number of bytes, starting with a buffer of at most the specified size.
+     *
+     * @param is          stream to read
+     * @param cnt         maximum number of bytes to read
+     * @param initialSize initial size of the buffer
+     * @return bytes read
+     * @throws IOException if an I/O error occurs
+     */
+    static byte[] readAvailable(InputStream is, int cnt, int initialSize) throws IOException {
+        byte[] buf = new byte[Math.max(Math.min(cnt, initialSize), 0)];
+        int off = 0;
+
+        for (int n; off < cnt; off += n) {
+            if (off == buf.length) {
+                buf = Arrays.copyOf(buf, (int) Math.min(Math.max(2L * buf.length, CodecPool.BUFFER_SIZE), cnt));
+            }
+
+            if ((n = is.read(buf, off, buf.length - off)) < 0) {
+                break;
+            }
+        }
+
+        return (off < buf.length) ? Arrays.copyOf(buf, off) : buf;
+    }
+
+    /**
+     * Reads a sequence of bytes from the source into a buffer, starting at the given position.
+     *
+     * @param pos position to read from
+     * @param dst buffer to read into, which is filled up to its limit unless the end of the source is reached
+     * @return number of bytes read, possibly zero, or {@code -1} if the position is at or past the end of the source
+     * @throws IOException if an I/O error occurs
+     */
+    default int read(long pos, ByteBuffer dst) throws IOException {
+        byte[] buf = readAvailable(pos, dst.remaining());
+        if ((buf.length == 0) && dst.hasRemaining()) {
+            return -1;
+        }
+
+        dst.put(buf);
+
+        return buf.length;
+    }
+
+    /**
+     * Transfers a region of the source to a channel.
+     *
+     * @param pos    position of the region
+     * @param length length of the region
+     * @param target channel to write to, which must be in blocking mode
+     * @throws IOException if an I/O error occurs, or if the source is too short
+     */
+    default void transferTo(long pos, long length, WritableByteChannel target) throws IOException {
+        checkBlocking(target);
+        byte[] buf = CodecPool.acquireBuffer();
+
+        try (InputStream is = newInputStream(pos, length)) {
+            long remaining = length;
+            for (int n; (remaining > 0) && ((n = is.read(buf, 0, (int) Math.min(buf.length, remaining))) >= 0); ) {
+                ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+                while (bb.hasRemaining()) {
+                    target.write(bb);
+                }
+
+                remaining -= n;
+            }
+
+            if (remaining > 0) {
+                throw new EOFException();
+            }
+
+        } finally {
+            CodecPool.releaseBuffer(buf);
+        }
+    }
+
+    /**
+     * Updates message digests with a region of the source.
+     *
+     * @param pos     position of the region
+     * @param length  length of the region
+     * @param digests digests to update
+     * @throws IOException if an I/O error occurs, or if the source is too short
+     */
+    default void digest(long pos, long length, MessageDigest... digests) throws IOException {
+        byte[] buf = CodecPool.acquireBuffer();
+
+        try (InputStream is = newInputStream(pos, length)) {
+            long remaining = length;
+            for (int n; (remaining > 0) && ((n = is.read(buf, 0, (int) Math.min(buf.length, remaining))) >= 0); ) {
+                for (MessageDigest digest : digests) {
+                    digest.update(buf, 0, n);
+                }
+
+                remaining -= n;
+            }
+
+            if (remaining > 0) {
+                throw new EOFException();
+            }
+
+        } finally {
+            CodecPool.releaseBuffer(buf);
+        }
+    }
+
+    /**
+     * Checks that a channel is in blocking mode, as writes to a non-blocking one may make no progress.
+     *
+     * @param target channel to check
+     * @throws IllegalArgumentException if the channel is in non-blocking mode
+     */
+    static void checkBlocking(WritableByteChannel target) {
+        if ((target instanceof SelectableChannel) && !((SelectableChannel) target).isBlocking()) {
+            throw new IllegalArgumentException("The target channel must be in blocking mode");
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.XarArchive;
+import com.github.gino0631.xar.XarStreamReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
+
+public final class XarStreamReaderImpl implements XarStreamReader {
+    private final XarArchiveImpl archive;
+    private boolean entriesRead;
+
+    XarStreamReaderImpl(InputStream input) throws IOException {
+        ForwardOnlyXarSource source = new ForwardOnlyXarSource(input);
+
+        try {
+            archive = new XarArchiveImpl(source);
+
+        } catch (IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public XarArchive.Header getHeader() {
+        return archive.getHeader();
+    }
+
+    @Override
+    public Date getCreationTime() {
+        return archive.getCreationTime();
+    }
+
+    @Override
+    public XarArchive.Signature getSignature() {
+        return archive.getSignature();
+    }
+
+    @Override
+    public XarArchive.Signature getXSignature() {
+        return archive.getXSignature();
+    }
+
+    @Override
+    public List<XarArchive.Entry> getEntries() {
+        return archive.getEntries();
+    }
+
+    @Override
+    public synchronized void readEntries(XarArchive.EntryHandler handler) throws IOException {
+        if (entriesRead) {
+            throw new IllegalStateException("Entries have already been read");
+        }
+
+        entriesRead = true;
+        archive.readInHeapOrder(handler);
+    }
+
+    @Override
+    public void close() throws IOException {
+        archive.close();
+    }
+}
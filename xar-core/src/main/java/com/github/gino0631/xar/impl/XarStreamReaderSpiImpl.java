@@ -0,0 +1,14 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.XarStreamReader;
+import com.github.gino0631.xar.spi.XarStreamReaderSpi;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public final class XarStreamReaderSpiImpl implements XarStreamReaderSpi {
+    @Override
+    public XarStreamReader open(InputStream input) throws IOException {
+        return new XarStreamReaderImpl(input);
+    }
+}
@@ -0,0 +1,349 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.common.io.IoStreams;
+import com.github.gino0631.xar.XarArchive;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Seek index of a zlib stream, which records the state needed to resume decoding at deflate block boundaries.
+ * <p>
+ * A checkpoint holds the bit position of a block, the number of bytes decoded before it, and the sliding window.
+ * Decoding is resumed by a raw {@link Inflater}, which has no way to start in the middle of a byte; when a block
+ * does not start at a byte boundary, the inflater is first fed a synthetic fixed Huffman block, which ends at the same
+ * bit offset as the real one starts, and only then gets the window as its dictionary.
+ */
+final class ZlibSeekIndex implements XarArchive.SeekIndex {
+    private static final int MAGIC = 0x78736b69;   // "xski"
+    private static final int VERSION = 1;
+    private static final int ZLIB_HEADER_SIZE = 2;
+    private static final int MAX_CHECKSUM_SIZE = 64;
+
+    private final long archivedLength;
+    private final long extractedSize;
+    private final byte[] archivedChecksum;
+    private final long span;
+    private final long[] bitPositions;
+    private final long[] outputPositions;
+    private final byte[][] windows;
+
+    private ZlibSeekIndex(long archivedLength, long extractedSize, byte[] archivedChecksum, long span,
+                          long[] bitPositions, long[] outputPositions, byte[][] windows) {
+        this.archivedLength = archivedLength;
+        this.extractedSize = extractedSize;
+        this.archivedChecksum = archivedChecksum;
+        this.span = span;
+        this.bitPositions = bitPositions;
+        this.outputPositions = outputPositions;
+        this.windows = windows;
+    }
+
+    /**
+     * Builds an index by decoding a zlib stream.
+     *
+     * @param is               zlib stream
+     * @param archivedLength   length of the zlib stream
+     * @param archivedChecksum checksum of the zlib stream, identifying it
+     * @param span             minimum distance between checkpoints
+     * @param messageDigest    digest to update with the decoded data, or {@code null}
+     * @return the index
+     * @throws IOException if an I/O error occurs, or if the stream is invalid
+     */
+    static ZlibSeekIndex build(InputStream is, long archivedLength, byte[] archivedChecksum, long span, MessageDigest messageDigest) throws IOException {
+        int cmf = is.read();
+        int flg = is.read();
+        if ((flg < 0) || ((cmf & 0x0f) != 8) || ((flg & 0x20) != 0) || (((cmf << 8) | flg) % 31 != 0)) {
+            throw new ZipException("Unsupported zlib header");
+        }
+
+        List<long[]> positions = new ArrayList<>();
+        List<byte[]> windows = new ArrayList<>();
+        byte[] buf = CodecPool.acquireBuffer();
+        long extractedSize;
+
+        try {
+            long[] last = {0};
+            DeflateScanner scanner = new DeflateScanner(is, messageDigest, buf);
+
+            extractedSize = scanner.scan((s, bitPosition, outputSize) -> {
+                if (outputSize - last[0] >= span) {
+                    positions.add(new long[]{bitPosition, outputSize});
+                    windows.add(s.getWindow());
+                    last[0] = outputSize;
+                }
+            });
+
+        } finally {
+            CodecPool.releaseBuffer(buf);
+        }
+
+        long[] bitPositions = new long[positions.size()];
+        long[] outputPositions = new long[positions.size()];
+        for (int i = 0; i < bitPositions.length; i++) {
+            bitPositions[i] = positions.get(i)[0];
+            outputPositions[i] = positions.get(i)[1];
+        }
+
+        return new ZlibSeekIndex(archivedLength, extractedSize, archivedChecksum, span,
+                bitPositions, outputPositions, windows.toArray(new byte[0][]));
+    }
+
+    /**
+     * Reads an index saved with {@link #writeTo(OutputStream)}.
+     *
+     * @param input stream to read from
+     * @return the index
+     * @throws IOException if an I/O error occurs, or if the data is not a seek index
+     */
+    static ZlibSeekIndex read(InputStream input) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new InflaterInputStream(IoStreams.closeProtect(input)))) {
+            if (dis.readInt() != MAGIC) {
+                throw new IOException("Not a seek index");
+            }
+
+            int version = dis.readInt();
+            if (version != VERSION) {
+                throw new IOException(MessageFormat.format("Unsupported seek index version {0}", version));
+            }
+
+            long archivedLength = dis.readLong();
+            long extractedSize = dis.readLong();
+            byte[] archivedChecksum = readBytes(dis, MAX_CHECKSUM_SIZE);
+            long span = dis.readLong();
+            if ((archivedLength < 0) || (extractedSize < 0) || (span <= 0)) {
+                throw new IOException("Invalid seek index");
+            }
+
+            // Checkpoints are at least the span apart, so their count is limited by the decoded data
+            int count = dis.readInt();
+            if ((count < 0) || (count > extractedSize / span)) {
+                throw new IOException(MessageFormat.format("Invalid seek index checkpoint count {0}", count));
+            }
+
+            long[] bitPositions = new long[count];
+            long[] outputPositions = new long[count];
+            byte[][] windows = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                bitPositions[i] = dis.readLong();
+                outputPositions[i] = dis.readLong();
+                windows[i] = readBytes(dis, DeflateScanner.WINDOW_SIZE);
+
+                long previousBitPosition = (i > 0) ? bitPositions[i - 1] : -1;
+                long previousOutputPosition = (i > 0) ? outputPositions[i - 1] : 0;
+                if ((bitPositions[i] <= previousBitPosition) || (ZLIB_HEADER_SIZE + (bitPositions[i] >>> 3) >= archivedLength)
+                        || (outputPositions[i] - previousOutputPosition < span) || (outputPositions[i] > extractedSize)
+                        || (windows[i] == null)) {
+                    throw new IOException(MessageFormat.format("Invalid seek index checkpoint {0}", i));
+                }
+            }
+
+            return new ZlibSeekIndex(archivedLength, extractedSize, archivedChecksum, span, bitPositions, outputPositions, windows);
+        }
+    }
+
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(new DeflaterOutputStream(IoStreams.closeProtect(output)))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(archivedLength);
+            dos.writeLong(extractedSize);
+            writeBytes(dos, archivedChecksum);
+            dos.writeLong(span);
+
+            dos.writeInt(bitPositions.length);
+            for (int i = 0; i < bitPositions.length; i++) {
+                dos.writeLong(bitPositions[i]);
+                dos.writeLong(outputPositions[i]);
+                writeBytes(dos, windows[i]);
+            }
+        }
+    }
+
+    @Override
+    public long getSpan() {
+        return span;
+    }
+
+    @Override
+    public int getCheckpointCount() {
+        return bitPositions.length;
+    }
+
+    /**
+     * Checks whether the index has been built for the specified zlib stream.
+     *
+     * @param archivedLength   length of the zlib stream
+     * @param extractedSize    length of the decoded data
+     * @param archivedChecksum checksum of the zlib stream
+     * @return {@code true} if the index matches the stream
+     */
+    boolean matches(long archivedLength, long extractedSize, byte[] archivedChecksum) {
+        return (this.archivedLength == archivedLength) && (this.extractedSize == extractedSize)
+                && Arrays.equals(this.archivedChecksum, archivedChecksum);
+    }
+
+    /**
+     * Opens a stream decoding the zlib stream from the checkpoint closest to the offset.
+     *
+     * @param source source containing the zlib stream
+     * @param pos    position of the zlib stream
+     * @param offset offset of the decoded data to start at
+     * @return input stream, or {@code null} if there is no checkpoint at or before the offset
+     * @throws IOException if an I/O error occurs
+     */
+    InputStream newInputStream(XarSource source, long pos, long offset) throws IOException {
+        int i = Arrays.binarySearch(outputPositions, offset);
+        if (i < 0) {
+            i = -i - 2;
+            if (i < 0) {
+                return null;
+            }
+        }
+
+        long bitPosition = bitPositions[i];
+        long start = ZLIB_HEADER_SIZE + (bitPosition >>> 3);
+        int bitOffset = (int) (bitPosition & 7);
+
+        Inflater inflater = CodecPool.acquireRawInflater();
+        InputStream is = null;
+        InputStream result;
+
+        try {
+            is = source.newInputStream(pos + start, archivedLength - start);
+
+            if (bitOffset != 0) {
+                int b = is.read();
+                if (b < 0) {
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+
+                prime(inflater, bitOffset, b);
+            }
+
+            if (windows[i].length > 0) {
+                inflater.setDictionary(windows[i]);
+            }
+
+            result = new InflaterInputStream(is, inflater, CodecPool.BUFFER_SIZE) {
+                private boolean released;
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+
+                    } finally {
+                        if (!released) {
+                            released = true;
+                            CodecPool.releaseRawInflater(inflater);
+                        }
+                    }
+                }
+            };
+
+        } catch (IOException | RuntimeException e) {
+            CodecPool.releaseRawInflater(inflater);
+            if (is != null) {
+                is.close();
+            }
+
+            throw e;
+        }
+
+        try {
+            IoStreams.waste(result, offset - outputPositions[i]);
+
+        } catch (IOException | RuntimeException e) {
+            result.close();
+            throw e;
+        }
+
+        return result;
+    }
+
+    /**
+     * Feeds the inflater with a fixed Huffman block of 9-bit literals, so that the block ends at the specified bit
+     * offset of the last byte, which is merged with the first byte of the real data.
+     */
+    private static void prime(Inflater inflater, int bitOffset, int firstByte) throws ZipException {
+        // 3 bits of header and 7 bits of end-of-block code, plus 9 bits per literal
+        int literals = (bitOffset + 6) % 8;
+        int length = 10 + 9 * literals;
+        byte[] prefix = new byte[(length + 7) / 8];
+
+        // BFINAL = 0, BTYPE = 01
+        int bit = 1;
+        prefix[0] |= 1 << bit;
+        bit += 2;
+
+        // Literal 144, whose code is 110010000 (Huffman codes are packed starting with the most significant bit)
+        for (int i = 0; i < literals; i++) {
+            for (int j = 8; j >= 0; j--) {
+                prefix[bit >>> 3] |= ((0b110010000 >>> j) & 1) << (bit & 7);
+                bit++;
+            }
+        }
+
+        // End-of-block code is 0000000, and the rest of the last byte comes from the real data
+        prefix[prefix.length - 1] |= firstByte & (0xff << bitOffset);
+
+        inflater.setInput(prefix);
+
+        try {
+            byte[] discard = new byte[literals + 1];
+            int n = 0;
+            while (!inflater.needsInput() && (n < discard.length)) {
+                n += inflater.inflate(discard, n, discard.length - n);
+            }
+
+            if (n != literals) {
+                throw new IllegalStateException(MessageFormat.format("Expected {0} bytes from priming block, got {1}", literals, n));
+            }
+
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream dis, int maxLength) throws IOException {
+        int length = dis.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        if (length > maxLength) {
+            throw new IOException(MessageFormat.format("Invalid seek index field length {0}", length));
+        }
+
+        byte[] bytes = new byte[length];
+        dis.readFully(bytes);
+
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream dos, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            dos.writeInt(-1);
+
+        } else {
+            dos.writeInt(bytes.length);
+            dos.write(bytes);
+        }
+    }
+}
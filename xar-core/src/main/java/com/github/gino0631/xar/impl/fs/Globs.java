@@ -0,0 +1,127 @@
+package com.github.gino0631.xar.impl.fs;
+
+import java.text.MessageFormat;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Conversion of glob patterns, as described by {@link java.nio.file.FileSystem#getPathMatcher(String)}, to regular
+ * expressions.
+ */
+final class Globs {
+    private static final String REGEX_META_CHARS = ".^$+{[]|()";
+    private static final String GLOB_META_CHARS = "\\*?[{";
+
+    private Globs() {
+    }
+
+    static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder("^");
+        boolean inGroup = false;
+
+        for (int i = 0; i < glob.length(); ) {
+            char c = glob.charAt(i++);
+
+            switch (c) {
+                case '\\':
+                    if (i == glob.length()) {
+                        throw new PatternSyntaxException("No character to escape", glob, i - 1);
+                    }
+
+                    char next = glob.charAt(i++);
+                    if ((GLOB_META_CHARS.indexOf(next) >= 0) || (REGEX_META_CHARS.indexOf(next) >= 0)) {
+                        regex.append('\\');
+                    }
+
+                    regex.append(next);
+                    break;
+
+                case '/':
+                    regex.append(c);
+                    break;
+
+                case '[':
+                    regex.append("[[^/]&&[");
+                    if ((i < glob.length()) && (glob.charAt(i) == '!')) {
+                        regex.append('^');
+                        i++;
+                    }
+
+                    for (boolean closed = false; !closed; ) {
+                        if (i == glob.length()) {
+                            throw new PatternSyntaxException("Missing ']'", glob, i - 1);
+                        }
+
+                        c = glob.charAt(i++);
+                        if (c == ']') {
+                            closed = true;
+
+                        } else if (c == '/') {
+                            throw new PatternSyntaxException("Explicit 'name separator' in class", glob, i - 1);
+
+                        } else {
+                            if ((c == '\\') || (c == '[') || ((c == '&') && (i < glob.length()) && (glob.charAt(i) == '&'))) {
+                                regex.append('\\');
+                            }
+
+                            regex.append(c);
+                        }
+                    }
+
+                    regex.append("]]");
+                    break;
+
+                case '{':
+                    if (inGroup) {
+                        throw new PatternSyntaxException("Cannot nest groups", glob, i - 1);
+                    }
+
+                    regex.append("(?:(?:");
+                    inGroup = true;
+                    break;
+
+                case '}':
+                    if (inGroup) {
+                        regex.append("))");
+                        inGroup = false;
+
+                    } else {
+                        regex.append('}');
+                    }
+
+                    break;
+
+                case ',':
+                    regex.append(inGroup ? ")|(?:" : ",");
+                    break;
+
+                case '*':
+                    if ((i < glob.length()) && (glob.charAt(i) == '*')) {
+                        regex.append(".*");
+                        i++;
+
+                    } else {
+                        regex.append("[^/]*");
+                    }
+
+                    break;
+
+                case '?':
+                    regex.append("[^/]");
+                    break;
+
+                default:
+                    if (REGEX_META_CHARS.indexOf(c) >= 0) {
+                        regex.append('\\');
+                    }
+
+                    regex.append(c);
+            }
+        }
+
+        if (inGroup) {
+            throw new PatternSyntaxException(MessageFormat.format("Missing ''{0}''", '}'), glob, glob.length() - 1);
+        }
+
+        return regex.append('$').toString();
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.gino0631.xar.impl.fs;
+
+import com.github.gino0631.xar.XarArchive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.text.MessageFormat;
+
+/**
+ * Read-only channel over an encoded entry, which keeps a decoding stream open for sequential reads, and reopens it
+ * with {@link XarArchive.Entry#newInputStream(long)} when positioned backwards or far ahead, so that the seek index
+ * of the entry is used if there is one.
+ */
+final class StreamChannel implements SeekableByteChannel {
+    // With a seek index, forward jumps up to its span, but not longer than this, are served by decoding and
+    // discarding data from the open stream; without one, all of them are
+    private static final long MAX_SKIP = 256 * 1024;
+
+    private final XarArchive.Entry entry;
+    private final long size;
+    private InputStream stream;
+    private ReadableByteChannel channel;
+    private long streamPosition;
+    private long position;
+    private boolean open = true;
+
+    StreamChannel(XarArchive.Entry entry) {
+        this.entry = entry;
+        this.size = Math.max(entry.getSize(), 0);
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+
+        if (position >= size) {
+            return -1;
+        }
+
+        if ((stream == null) || (position < streamPosition) || (position - streamPosition > skipLimit())) {
+            closeStream();
+            stream = entry.newInputStream(position);
+            channel = Channels.newChannel(stream);
+            streamPosition = position;
+
+        } else if (position > streamPosition) {
+            for (long n = position - streamPosition; n > 0; ) {
+                long skipped = stream.skip(n);
+                if (skipped <= 0) {
+                    if (stream.read() < 0) {
+                        break;
+                    }
+
+                    skipped = 1;
+                }
+
+                n -= skipped;
+            }
+
+            streamPosition = position;
+        }
+
+        int n = channel.read(dst);
+        if (n > 0) {
+            streamPosition += n;
+            position = streamPosition;
+        }
+
+        return n;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+
+        if (newPosition < 0) {
+            throw new IllegalArgumentException(MessageFormat.format("Negative position {0}", newPosition));
+        }
+
+        position = newPosition;
+
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        ensureOpen();
+
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        ensureOpen();
+
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (open) {
+            open = false;
+            closeStream();
+        }
+    }
+
+    private long skipLimit() {
+        XarArchive.SeekIndex seekIndex = entry.getSeekIndex();
+
+        return (seekIndex != null) ? Math.min(seekIndex.getSpan(), MAX_SKIP) : Long.MAX_VALUE;
+    }
+
+    private void closeStream() throws IOException {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+            channel = null;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.gino0631.xar.impl.fs;
+
+import com.github.gino0631.xar.XarArchive;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Directory stream over child entries, which are already in memory, so iteration never does I/O.
+ */
+final class XarDirectoryStream implements DirectoryStream<Path> {
+    private final XarPath dir;
+    private final List<XarArchive.Entry> entries;
+    private final Filter<? super Path> filter;
+    private volatile boolean closed;
+    private boolean iterated;
+
+    XarDirectoryStream(XarPath dir, List<XarArchive.Entry> entries, Filter<? super Path> filter) {
+        this.dir = dir;
+        this.entries = (entries != null) ? entries : Collections.emptyList();
+        this.filter = filter;
+    }
+
+    @Override
+    public synchronized Iterator<Path> iterator() {
+        if (closed) {
+            throw new IllegalStateException("Directory stream is closed");
+        }
+
+        if (iterated) {
+            throw new IllegalStateException("Iterator already obtained");
+        }
+
+        iterated = true;
+        Iterator<XarArchive.Entry> it = entries.iterator();
+
+        return new Iterator<Path>() {
+            private Path next;
+
+            @Override
+            public boolean hasNext() {
+                while ((next == null) && !closed && it.hasNext()) {
+                    Path path = dir.resolve(it.next().getName());
+
+                    try {
+                        if ((filter == null) || filter.accept(path)) {
+                            next = path;
+                        }
+
+                    } catch (IOException e) {
+                        throw new DirectoryIteratorException(e);
+                    }
+                }
+
+                return next != null;
+            }
+
+            @Override
+            public Path next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                Path result = next;
+                next = null;
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.gino0631.xar.impl.fs;
+
+import com.github.gino0631.xar.XarArchive;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Basic attributes of an entry. Entries have no times of their own, so all times are the creation time of the archive.
+ */
+final class XarFileAttributes implements BasicFileAttributes {
+    private final XarArchive.Entry entry;
+    private final FileTime time;
+
+    /**
+     * Creates attributes of an entry.
+     *
+     * @param archive the archive
+     * @param entry   the entry, or {@code null} for the root directory
+     */
+    XarFileAttributes(XarArchive archive, XarArchive.Entry entry) {
+        Date creationTime = archive.getCreationTime();
+
+        this.entry = entry;
+        this.time = FileTime.fromMillis((creationTime != null) ? creationTime.getTime() : 0);
+    }
+
+    @Override
+    public FileTime lastModifiedTime() {
+        return time;
+    }
+
+    @Override
+    public FileTime lastAccessTime() {
+        return time;
+    }
+
+    @Override
+    public FileTime creationTime() {
+        return time;
+    }
+
+    @Override
+    public boolean isRegularFile() {
+        return (entry != null) && !entry.isDirectory();
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return (entry == null) || entry.isDirectory();
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+        return false;
+    }
+
+    @Override
+    public boolean isOther() {
+        return false;
+    }
+
+    @Override
+    public long size() {
+        return (entry != null) ? Math.max(entry.getSize(), 0) : 0;
+    }
+
+    @Override
+    public Object fileKey() {
+        return (entry != null) ? entry.getId() : null;
+    }
+
+    /**
+     * Gets attributes by name, as {@link java.nio.file.Files#readAttributes(java.nio.file.Path, String, java.nio.file.LinkOption...)} does.
+     *
+     * @param attributes comma-separated attribute names, or {@code *}
+     * @return map of attribute names to values
+     * @throws IllegalArgumentException if an attribute is not recognized
+     */
+    Map<String, Object> toMap(String attributes) {
+        Map<String, Object> map = new LinkedHashMap<>();
+
+        for (String name : attributes.split(",")) {
+            switch (name) {
+                case "*":
+                    for (String n : new String[]{"lastModifiedTime", "lastAccessTime", "creationTime", "size",
+                            "isRegularFile", "isDirectory", "isSymbolicLink", "isOther", "fileKey"}) {
+                        map.put(n, get(n));
+                    }
+
+                    break;
+
+                default:
+                    map.put(name, get(name));
+            }
+        }
+
+        return map;
+    }
+
+    private Object get(String name) {
+        switch (name) {
+            case "lastModifiedTime":
+                return lastModifiedTime();
+
+            case "lastAccessTime":
+                return lastAccessTime();
+
+            case "creationTime":
+                return creationTime();
+
+            case "size":
+                return size();
+
+            case "isRegularFile":
+                return isRegularFile();
+
+            case "isDirectory":
+                return isDirectory();
+
+            case "isSymbolicLink":
+                return isSymbolicLink();
+
+            case "isOther":
+                return isOther();
+
+            case "fileKey":
+                return fileKey();
+
+            default:
+                throw new IllegalArgumentException("Unrecognized attribute " + name);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.gino0631.xar.impl.fs;
+
+import com.github.gino0631.xar.XarArchive;
+
+import java.io.IOException;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Read-only file system over an archive, whose entries are looked up by the path index of the archive.
+ */
+final class XarFileSystem extends FileSystem {
+    private final XarFileSystemProvider provider;
+    private final Path archiveFile;
+    private final XarArchive archive;
+    private final XarPath root;
+    private volatile boolean open = true;
+
+    XarFileSystem(XarFileSystemProvider provider, Path archiveFile, XarArchive archive) {
+        this.provider = provider;
+        this.archiveFile = archiveFile;
+        this.archive = archive;
+        this.root = new XarPath(this, "/");
+    }
+
+    @Override
+    public XarFileSystemProvider provider() {
+        return provider;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (open) {
+            open = false;
+            provider.removeFileSystem(archiveFile, this);
+            archive.close();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public String getSeparator() {
+        return "/";
+    }
+
+    @Override
+    public Iterable<Path> getRootDirectories() {
+        return Collections.singletonList(root);
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return Collections.singleton("basic");
+    }
+
+    @Override
+    public XarPath getPath(String first, String... more) {
+        if (more.length == 0) {
+            return new XarPath(this, first);
+        }
+
+        StringBuilder sb = new StringBuilder(first);
+        for (String segment : more) {
+            if (!segment.isEmpty()) {
+                if (sb.length() > 0) {
+                    sb.append('/');
+                }
+
+                sb.append(segment);
+            }
+        }
+
+        return new XarPath(this, sb.toString());
+    }
+
+    @Override
+    public PathMatcher getPathMatcher(String syntaxAndPattern) {
+        int i = syntaxAndPattern.indexOf(':');
+        if (i <= 0) {
+            throw new IllegalArgumentException(MessageFormat.format("Invalid syntax and pattern {0}", syntaxAndPattern));
+        }
+
+        String syntax = syntaxAndPattern.substring(0, i);
+        String pattern = syntaxAndPattern.substring(i + 1);
+        Pattern regex;
+
+        if (syntax.equalsIgnoreCase("glob")) {
+            regex = Pattern.compile(Globs.toRegex(pattern));
+
+        } else if (syntax.equalsIgnoreCase("regex")) {
+            regex = Pattern.compile(pattern);
+
+        } else {
+            throw new UnsupportedOperationException(MessageFormat.format("Unsupported syntax {0}", syntax));
+        }
+
+        return (path) -> regex.matcher(path.toString()).matches();
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public WatchService newWatchService() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString() {
+        return archiveFile.toString();
+    }
+
+    Path getArchiveFile() {
+        return archiveFile;
+    }
+
+    XarArchive getArchive() {
+        ensureOpen();
+
+        return archive;
+    }
+
+    /**
+     * Finds the entry at the specified path.
+     *
+     * @param path path of the entry
+     * @return the entry, or {@code null} if it is the root directory, or if there is no such entry
+     */
+    XarArchive.Entry getEntry(XarPath path) {
+        ensureOpen();
+
+        return isRoot(path) ? null : archive.getEntry(path.toAbsolutePath().normalize().toString());
+    }
+
+    boolean isRoot(XarPath path) {
+        return path.toAbsolutePath().normalize().getNameCount() == 0;
+    }
+
+    private void ensureOpen() {
+        if (!open) {
+            throw new ClosedFileSystemException();
+        }
+    }
+}
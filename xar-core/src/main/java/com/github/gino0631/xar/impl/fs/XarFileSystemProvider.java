@@ -0,0 +1,381 @@
+package com.github.gino0631.xar.impl.fs;
+
+import com.github.gino0631.xar.EncodingAlgorithm;
+import com.github.gino0631.xar.XarArchive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.ReadOnlyFileSystemException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.spi.FileSystemProvider;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Provider of read-only file systems over XAR archives, with URIs like {@code xar:file:///path/archive.xar!/entry}.
+ * <p>
+ * A file system is created by {@link java.nio.file.FileSystems#newFileSystem(URI, Map)} with the URI of the archive
+ * (e.g. {@code xar:file:///path/archive.xar}), or by {@link java.nio.file.FileSystems#newFileSystem(Path, ClassLoader)}.
+ * Archives are loaded with the load options passed in the {@value #LOAD_OPTIONS} environment property, if any, as
+ * a collection of {@link XarArchive.LoadOption}.
+ * <p>
+ * Channels of stored entries read the archive file with positional reads, so any number of them can be used
+ * concurrently; channels of encoded entries decode them, using their seek indexes when positioned.
+ */
+public final class XarFileSystemProvider extends FileSystemProvider {
+    static final String SCHEME = "xar";
+    static final String SEPARATOR = "!/";
+    private static final byte[] XAR_MAGIC = {'x', 'a', 'r', '!'};
+
+    /**
+     * Name of the environment property holding archive load options.
+     */
+    public static final String LOAD_OPTIONS = "loadOptions";
+
+    private final Map<Path, XarFileSystem> fileSystems = new HashMap<>();
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public FileSystem newFileSystem(URI uri, Map<String, ?> env) throws IOException {
+        Path archiveFile = toArchiveFile(uri);
+
+        synchronized (fileSystems) {
+            if (fileSystems.containsKey(archiveFile)) {
+                throw new FileSystemAlreadyExistsException(archiveFile.toString());
+            }
+        }
+
+        // Loading may take long, so it must not block access to other file systems
+        XarFileSystem fileSystem = loadFileSystem(archiveFile, env);
+
+        synchronized (fileSystems) {
+            if (fileSystems.putIfAbsent(archiveFile, fileSystem) == null) {
+                return fileSystem;
+            }
+        }
+
+        // Another file system has been created for the archive in the meantime
+        fileSystem.close();
+        throw new FileSystemAlreadyExistsException(archiveFile.toString());
+    }
+
+    @Override
+    public FileSystem newFileSystem(Path path, Map<String, ?> env) throws IOException {
+        // Other providers are tried for files which are not archives, so do not fail with an I/O error
+        try (InputStream is = Files.newInputStream(path)) {
+            byte[] magic = new byte[XAR_MAGIC.length];
+            if ((is.read(magic) != magic.length) || !Arrays.equals(magic, XAR_MAGIC)) {
+                throw new UnsupportedOperationException(MessageFormat.format("{0} is not a XAR archive", path));
+            }
+        }
+
+        return loadFileSystem(path.toAbsolutePath().normalize(), env);
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI uri) {
+        Path archiveFile = toArchiveFile(uri);
+
+        synchronized (fileSystems) {
+            XarFileSystem fileSystem = fileSystems.get(archiveFile);
+            if (fileSystem == null) {
+                throw new FileSystemNotFoundException(archiveFile.toString());
+            }
+
+            return fileSystem;
+        }
+    }
+
+    @Override
+    public Path getPath(URI uri) {
+        String spec = uri.getRawSchemeSpecificPart();
+        int i = spec.indexOf(SEPARATOR);
+        if (i < 0) {
+            throw new IllegalArgumentException(MessageFormat.format("URI {0} does not contain path info, e.g. {1}", uri, SCHEME + ":file:///archive.xar!/entry"));
+        }
+
+        try {
+            return getFileSystem(uri).getPath(new URI(spec.substring(i + 1)).getPath());
+
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        for (OpenOption option : options) {
+            if ((option != StandardOpenOption.READ) && (option != LinkOption.NOFOLLOW_LINKS)) {
+                throw new ReadOnlyFileSystemException();
+            }
+        }
+
+        XarArchive.Entry entry = getFile(path);
+
+        // Entries without data have no encoding, and stream channels read them as empty
+        return (entry.getEncoding() == EncodingAlgorithm.NONE) ? entry.newChannel() : new StreamChannel(entry);
+    }
+
+    @Override
+    public InputStream newInputStream(Path path, OpenOption... options) throws IOException {
+        for (OpenOption option : options) {
+            if ((option != StandardOpenOption.READ) && (option != LinkOption.NOFOLLOW_LINKS)) {
+                throw new UnsupportedOperationException(MessageFormat.format("Unsupported option {0}", option));
+            }
+        }
+
+        // Unlike channels, streams verify the entry data
+        XarArchive.Entry entry = getFile(path);
+        InputStream is = entry.newInputStream();
+
+        return (is != null) ? is : new InputStream() {
+            @Override
+            public int read() {
+                return -1;
+            }
+        };
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+        XarPath path = toXarPath(dir);
+        XarFileSystem fileSystem = path.getFileSystem();
+
+        if (fileSystem.isRoot(path)) {
+            return new XarDirectoryStream(path, fileSystem.getArchive().getEntries(), filter);
+        }
+
+        XarArchive.Entry entry = getEntry(path);
+        if (!entry.isDirectory()) {
+            throw new NotDirectoryException(dir.toString());
+        }
+
+        return new XarDirectoryStream(path, entry.getEntries(), filter);
+    }
+
+    @Override
+    public void createDirectory(Path dir, FileAttribute<?>... attrs) {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    @Override
+    public void delete(Path path) {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    @Override
+    public void copy(Path source, Path target, CopyOption... options) {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    @Override
+    public void move(Path source, Path target, CopyOption... options) {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    @Override
+    public boolean isSameFile(Path path, Path path2) throws IOException {
+        if (path.equals(path2)) {
+            return true;
+        }
+
+        if (!(path2 instanceof XarPath) || (path.getFileSystem() != path2.getFileSystem())) {
+            return false;
+        }
+
+        checkAccess(path);
+        checkAccess(path2);
+
+        return toXarPath(path).toAbsolutePath().normalize().equals(((XarPath) path2).toAbsolutePath().normalize());
+    }
+
+    @Override
+    public boolean isHidden(Path path) {
+        return false;
+    }
+
+    @Override
+    public FileStore getFileStore(Path path) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void checkAccess(Path path, AccessMode... modes) throws IOException {
+        XarPath xarPath = toXarPath(path);
+        if (!xarPath.getFileSystem().isRoot(xarPath)) {
+            getEntry(xarPath);
+        }
+
+        for (AccessMode mode : modes) {
+            if (mode != AccessMode.READ) {
+                throw new AccessDeniedException(path.toString());
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+        if (type != BasicFileAttributeView.class) {
+            return null;
+        }
+
+        return (V) new BasicFileAttributeView() {
+            @Override
+            public String name() {
+                return "basic";
+            }
+
+            @Override
+            public BasicFileAttributes readAttributes() throws IOException {
+                return XarFileSystemProvider.this.readAttributes(path, BasicFileAttributes.class);
+            }
+
+            @Override
+            public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) {
+                throw new ReadOnlyFileSystemException();
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options) throws IOException {
+        if ((type != BasicFileAttributes.class) && (type != XarFileAttributes.class)) {
+            throw new UnsupportedOperationException(MessageFormat.format("Unsupported attributes {0}", type.getName()));
+        }
+
+        return (A) readAttributes(toXarPath(path));
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
+        int i = attributes.indexOf(':');
+        if ((i >= 0) && !attributes.substring(0, i).equals("basic")) {
+            throw new UnsupportedOperationException(MessageFormat.format("Unsupported attribute view {0}", attributes.substring(0, i)));
+        }
+
+        return readAttributes(toXarPath(path)).toMap(attributes.substring(i + 1));
+    }
+
+    @Override
+    public void setAttribute(Path path, String attribute, Object value, LinkOption... options) {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    void removeFileSystem(Path archiveFile, XarFileSystem fileSystem) {
+        synchronized (fileSystems) {
+            fileSystems.remove(archiveFile, fileSystem);
+        }
+    }
+
+    private XarFileSystem loadFileSystem(Path archiveFile, Map<String, ?> env) throws IOException {
+        Object loadOptions = (env != null) ? env.get(LOAD_OPTIONS) : null;
+        XarArchive.LoadOption[] options;
+
+        if (loadOptions == null) {
+            options = new XarArchive.LoadOption[0];
+
+        } else if (loadOptions instanceof Collection) {
+            options = ((Collection<?>) loadOptions).toArray(new XarArchive.LoadOption[0]);
+
+        } else {
+            throw new IllegalArgumentException(MessageFormat.format("Property {0} must be a collection of load options", LOAD_OPTIONS));
+        }
+
+        return new XarFileSystem(this, archiveFile, XarArchive.load(archiveFile, options));
+    }
+
+    private XarFileAttributes readAttributes(XarPath path) throws IOException {
+        XarFileSystem fileSystem = path.getFileSystem();
+
+        return new XarFileAttributes(fileSystem.getArchive(), fileSystem.isRoot(path) ? null : getEntry(path));
+    }
+
+    private XarArchive.Entry getFile(Path path) throws IOException {
+        XarPath xarPath = toXarPath(path);
+        if (xarPath.getFileSystem().isRoot(xarPath)) {
+            throw new FileSystemException(path.toString(), null, "Is a directory");
+        }
+
+        XarArchive.Entry entry = getEntry(xarPath);
+        if (entry.isDirectory()) {
+            throw new FileSystemException(path.toString(), null, "Is a directory");
+        }
+
+        return entry;
+    }
+
+    private static XarArchive.Entry getEntry(XarPath path) throws NoSuchFileException {
+        XarArchive.Entry entry = path.getFileSystem().getEntry(path);
+        if (entry == null) {
+            throw new NoSuchFileException(path.toString());
+        }
+
+        return entry;
+    }
+
+    private static void checkAccess(Path path) throws IOException {
+        path.getFileSystem().provider().checkAccess(path);
+    }
+
+    private static XarPath toXarPath(Path path) {
+        if (!(path instanceof XarPath)) {
+            throw new ProviderMismatchException();
+        }
+
+        return (XarPath) path;
+    }
+
+    private static Path toArchiveFile(URI uri) {
+        if (!SCHEME.equalsIgnoreCase(uri.getScheme())) {
+            throw new IllegalArgumentException(MessageFormat.format("URI scheme is not {0}", SCHEME));
+        }
+
+        String spec = uri.getRawSchemeSpecificPart();
+        int i = spec.indexOf(SEPARATOR);
+        if (i >= 0) {
+            spec = spec.substring(0, i);
+        }
+
+        try {
+            return Paths.get(new URI(spec)).toAbsolutePath().normalize();
+
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.github.gino0631.xar.impl.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Path of an entry in a XAR file system; names are separated by slashes, and absolute paths start with a slash.
+ */
+final class XarPath implements Path {
+    private final XarFileSystem fileSystem;
+    private final String path;
+    private volatile int[] offsets;
+
+    XarPath(XarFileSystem fileSystem, String path) {
+        this.fileSystem = fileSystem;
+        this.path = normalizeSeparators(path);
+    }
+
+    @Override
+    public XarFileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    @Override
+    public boolean isAbsolute() {
+        return path.startsWith("/");
+    }
+
+    @Override
+    public XarPath getRoot() {
+        return isAbsolute() ? new XarPath(fileSystem, "/") : null;
+    }
+
+    @Override
+    public XarPath getFileName() {
+        int count = getNameCount();
+        if (count == 0) {
+            return path.isEmpty() ? this : null;
+        }
+
+        return (count == 1 && !isAbsolute()) ? this : new XarPath(fileSystem, path.substring(getOffsets()[count - 1]));
+    }
+
+    @Override
+    public XarPath getParent() {
+        int count = getNameCount();
+        if (count == 0) {
+            return null;
+        }
+
+        if (count == 1) {
+            return getRoot();
+        }
+
+        return new XarPath(fileSystem, path.substring(0, getOffsets()[count - 1] - 1));
+    }
+
+    @Override
+    public int getNameCount() {
+        return getOffsets().length;
+    }
+
+    @Override
+    public XarPath getName(int index) {
+        return subpath(index, index + 1);
+    }
+
+    @Override
+    public XarPath subpath(int beginIndex, int endIndex) {
+        int[] offsets = getOffsets();
+        if ((beginIndex < 0) || (beginIndex >= offsets.length) || (endIndex > offsets.length) || (beginIndex >= endIndex)) {
+            throw new IllegalArgumentException();
+        }
+
+        int end = (endIndex == offsets.length) ? path.length() : offsets[endIndex] - 1;
+
+        return new XarPath(fileSystem, path.substring(offsets[beginIndex], end));
+    }
+
+    @Override
+    public boolean startsWith(Path other) {
+        if (!(other instanceof XarPath) || (((XarPath) other).fileSystem != fileSystem)) {
+            return false;
+        }
+
+        XarPath o = (XarPath) other;
+        if ((o.isAbsolute() != isAbsolute()) || (o.getNameCount() > getNameCount())) {
+            return false;
+        }
+
+        for (int i = 0; i < o.getNameCount(); i++) {
+            if (!o.name(i).equals(name(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean startsWith(String other) {
+        return startsWith(fileSystem.getPath(other));
+    }
+
+    @Override
+    public boolean endsWith(Path other) {
+        if (!(other instanceof XarPath) || (((XarPath) other).fileSystem != fileSystem)) {
+            return false;
+        }
+
+        XarPath o = (XarPath) other;
+        int count = getNameCount();
+        int otherCount = o.getNameCount();
+        if ((otherCount > count) || (o.isAbsolute() && ((otherCount != count) || !isAbsolute())) || (o.path.isEmpty() && !path.isEmpty())) {
+            return false;
+        }
+
+        for (int i = 1; i <= otherCount; i++) {
+            if (!o.name(otherCount - i).equals(name(count - i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean endsWith(String other) {
+        return endsWith(fileSystem.getPath(other));
+    }
+
+    @Override
+    public XarPath normalize() {
+        List<String> names = new ArrayList<>();
+
+        for (int i = 0; i < getNameCount(); i++) {
+            String name = name(i);
+
+            if (name.equals("..") && !names.isEmpty() && !names.get(names.size() - 1).equals("..")) {
+                names.remove(names.size() - 1);
+
+            } else if (!name.equals(".") && !(name.equals("..") && isAbsolute())) {
+                names.add(name);
+            }
+        }
+
+        return new XarPath(fileSystem, (isAbsolute() ? "/" : "") + String.join("/", names));
+    }
+
+    @Override
+    public XarPath resolve(Path other) {
+        XarPath o = toXarPath(other);
+
+        if (o.isAbsolute() || path.isEmpty()) {
+            return o;
+
+        } else if (o.path.isEmpty()) {
+            return this;
+
+        } else {
+            return new XarPath(fileSystem, path.endsWith("/") ? path + o.path : path + "/" + o.path);
+        }
+    }
+
+    @Override
+    public XarPath resolve(String other) {
+        return resolve(fileSystem.getPath(other));
+    }
+
+    @Override
+    public Path resolveSibling(Path other) {
+        Objects.requireNonNull(other);
+        XarPath parent = getParent();
+
+        return (parent == null) ? other : parent.resolve(other);
+    }
+
+    @Override
+    public Path resolveSibling(String other) {
+        return resolveSibling(fileSystem.getPath(other));
+    }
+
+    @Override
+    public XarPath relativize(Path other) {
+        XarPath o = toXarPath(other);
+        if (o.isAbsolute() != isAbsolute()) {
+            throw new IllegalArgumentException("Paths must be either both absolute or both relative");
+        }
+
+        int count = getNameCount();
+        int otherCount = o.getNameCount();
+        int common = 0;
+        while ((common < count) && (common < otherCount) && name(common).equals(o.name(common))) {
+            common++;
+        }
+
+        List<String> names = new ArrayList<>();
+        for (int i = common; i < count; i++) {
+            names.add("..");
+        }
+
+        for (int i = common; i < otherCount; i++) {
+            names.add(o.name(i));
+        }
+
+        return new XarPath(fileSystem, String.join("/", names));
+    }
+
+    @Override
+    public URI toUri() {
+        try {
+            String rawPath = new URI(null, null, toAbsolutePath().path, null).getRawPath();
+
+            return new URI(XarFileSystemProvider.SCHEME + ":" + fileSystem.getArchiveFile().toUri() + XarFileSystemProvider.SEPARATOR + rawPath.substring(1));
+
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public XarPath toAbsolutePath() {
+        return isAbsolute() ? this : new XarPath(fileSystem, "/" + path);
+    }
+
+    @Override
+    public XarPath toRealPath(LinkOption... options) throws IOException {
+        XarPath realPath = toAbsolutePath().normalize();
+        if (fileSystem.getEntry(realPath) == null) {
+            throw new NoSuchFileException(toString());
+        }
+
+        return realPath;
+    }
+
+    @Override
+    public File toFile() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events, WatchEvent.Modifier... modifiers) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public WatchKey register(WatchService watcher, WatchEvent.Kind<?>... events) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<Path> iterator() {
+        return new Iterator<Path>() {
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < getNameCount();
+            }
+
+            @Override
+            public Path next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return getName(i++);
+            }
+        };
+    }
+
+    @Override
+    public int compareTo(Path other) {
+        return path.compareTo(((XarPath) other).path);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof XarPath) && (((XarPath) o).fileSystem == fileSystem) && ((XarPath) o).path.equals(path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    private String name(int index) {
+        int[] offsets = getOffsets();
+        int end = (index == offsets.length - 1) ? path.length() : offsets[index + 1] - 1;
+
+        return path.substring(offsets[index], end);
+    }
+
+    private int[] getOffsets() {
+        int[] offsets = this.offsets;
+        if (offsets == null) {
+            int[] result = new int[path.length()];
+            int count = 0;
+
+            for (int i = 0; i < path.length(); i++) {
+                if ((path.charAt(i) != '/') && ((i == 0) || (path.charAt(i - 1) == '/'))) {
+                    result[count++] = i;
+                }
+            }
+
+            this.offsets = offsets = Arrays.copyOf(result, count);
+        }
+
+        return offsets;
+    }
+
+    private XarPath toXarPath(Path other) {
+        if (!(Objects.requireNonNull(other) instanceof XarPath)) {
+            throw new ProviderMismatchException();
+        }
+
+        return (XarPath) other;
+    }
+
+    private static String normalizeSeparators(String path) {
+        StringBuilder sb = new StringBuilder(path.length());
+
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '\0') {
+                throw new InvalidPathException(path, "Nul character not allowed");
+            }
+
+            if ((c != '/') || (sb.length() == 0) || (sb.charAt(sb.length() - 1) != '/')) {
+                sb.append(c);
+            }
+        }
+
+        // Drop the trailing slash, unless it is the root
+        if ((sb.length() > 1) && (sb.charAt(sb.length() - 1) == '/')) {
+            sb.setLength(sb.length() - 1);
+        }
+
+        return sb.toString();
+    }
+}
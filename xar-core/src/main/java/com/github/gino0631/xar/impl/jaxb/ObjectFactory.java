@@ -43,6 +43,10 @@ public final class ObjectFactory {
         return DATATYPE_FACTORY.newXMLGregorianCalendar(new GregorianCalendar(TimeZone.getTimeZone(ZoneOffset.UTC)));
     }
 
+    public static XMLGregorianCalendar newXmlGregorianCalendar(String lexicalRepresentation) {
+        return DATATYPE_FACTORY.newXMLGregorianCalendar(lexicalRepresentation);
+    }
+
     public static Xar unmarshal(InputStream is) throws IOException {
         try {
             Unmarshaller jaxbUnmarshaller = JAXB_CONTEXT.createUnmarshaller();
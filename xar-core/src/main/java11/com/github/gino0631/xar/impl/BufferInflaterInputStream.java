@@ -0,0 +1,117 @@
+package com.github.gino0631.xar.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Stream which inflates data of a {@link ByteBufferInput} directly from its buffers.
+ * <p>
+ * Compressed data is not passed through intermediate streams: it is inflated straight from the buffers into
+ * the caller's array, and digested in bulk through a reusable per-thread array.
+ */
+final class BufferInflaterInputStream extends InputStream {
+    private static final int INPUT_CHUNK = 64 * 1024;
+    private static final int DIGEST_CHUNK = 8 * 1024;
+
+    // MessageDigest copies direct buffers through a temporary array of its own, which would be allocated for every entry
+    private static final ThreadLocal<byte[]> digestBuffers = ThreadLocal.withInitial(() -> new byte[DIGEST_CHUNK]);
+
+    private final ByteBufferInput input;
+    private final Inflater inflater;
+    private final MessageDigest messageDigest;
+    private final byte[] singleByte = new byte[1];
+    private boolean eof;
+    private boolean closed;
+
+    BufferInflaterInputStream(ByteBufferInput input, Inflater inflater, MessageDigest messageDigest) {
+        this.input = input;
+        this.inflater = inflater;
+        this.messageDigest = messageDigest;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return (read(singleByte, 0, 1) == 1) ? singleByte[0] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        while (!eof) {
+            int n;
+            try {
+                n = inflater.inflate(b, off, len);
+
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+
+            if (n > 0) {
+                return n;
+            }
+
+            if (inflater.finished() || inflater.needsDictionary()) {
+                eof = true;
+
+            } else if (inflater.needsInput()) {
+                ByteBuffer buf = input.readBuffer(INPUT_CHUNK);
+                if (buf == null) {
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+
+                if (messageDigest != null) {
+                    digest(buf.duplicate());
+                }
+
+                inflater.setInput(buf);
+            }
+        }
+
+        return -1;
+    }
+
+    private void digest(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            messageDigest.update(buf);
+
+        } else {
+            byte[] tmp = digestBuffers.get();
+
+            while (buf.hasRemaining()) {
+                int n = Math.min(tmp.length, buf.remaining());
+                buf.get(tmp, 0, n);
+                messageDigest.update(tmp, 0, n);
+            }
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        return eof ? 0 : 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            input.close();
+        }
+    }
+}
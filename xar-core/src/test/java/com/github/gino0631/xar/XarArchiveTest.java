@@ -3,19 +3,55 @@ package com.github.gino0631.xar;
 import com.github.gino0631.common.io.IoStreams;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
 import java.io.*;
 import java.math.BigInteger;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.Pipe;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.ReadOnlyFileSystemException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import static org.junit.Assert.*;
 
@@ -81,6 +117,210 @@ public class XarArchiveTest {
             assertEntry(entries.get(0), 2, "Bom", false, 35903, 733);
             assertEntry(entries.get(1), 3, "Payload", false, 598, 598);
             assertEntry(entries.get(2), 4, "PackageInfo", false, 891, 376);
+            assertEquals("/com.test.my-test-app.pkg/Payload", entries.get(1).getPath());
+            assertSame(entries, xar.getEntries().get(1).getEntries());
+
+            assertEntry(xar.getEntry("/com.test.my-test-app.pkg/Payload"), 3, "Payload", false, 598, 598);
+            assertEntry(xar.getEntry("com.test.my-test-app.pkg/Bom"), 2, "Bom", false, 35903, 733);
+            assertNull(xar.getEntry("/com.test.my-test-app.pkg/payload"));
+            assertEquals("/com.test.my-test-app.pkg/Payload", xar.getEntry("/COM.test.my-test-app.pkg/payload", true).getPath());
+            assertEquals(entries.get(1), xar.getEntry("/com.test.my-test-app.pkg/Payload"));
+            assertEquals("/com.test.my-test-app.pkg/PackageInfo", xar.getEntryById(4).getPath());
+            assertNull(xar.getEntryById(6));
+
+            List<XarArchive.Entry> under = xar.entriesUnder("/com.test.my-test-app.pkg");
+            assertEquals(3, under.size());
+            assertEquals("/com.test.my-test-app.pkg/Bom", under.get(0).getPath());
+            assertEquals("/com.test.my-test-app.pkg/PackageInfo", under.get(1).getPath());
+            assertEquals("/com.test.my-test-app.pkg/Payload", under.get(2).getPath());
+            assertEquals(5, xar.entriesUnder("/").size());
+
+            List<XarArchive.Entry> heapOrder = xar.entriesInHeapOrder();
+            assertEquals(4, heapOrder.size());
+            assertEquals("/com.test.my-test-app.pkg/Bom", heapOrder.get(0).getPath());
+            assertEquals("/Distribution", heapOrder.get(3).getPath());
+            assertSame(heapOrder, xar.entriesInHeapOrder());
+        }
+    }
+
+    @Test
+    public void testLoadFromStreamSupplier() throws Exception {
+        Path file = new File(getClass().getResource("/Product.pkg").toURI()).toPath();
+
+        AtomicInteger openCount = new AtomicInteger();
+
+        try (XarArchive xar = XarArchive.load(() -> {
+            openCount.incrementAndGet();
+            return Files.newInputStream(file);
+        })) {
+            assertTrue(xar.getSignature().verify());
+            assertTrue(xar.getXSignature().verify());
+            assertEquals(1, openCount.get());
+
+            List<XarArchive.Entry> entries = xar.getEntries();
+            assertEquals(2, entries.size());
+            testRead(entries);
+        }
+    }
+
+    @Test
+    public void testLoadMemoryMapped() throws Exception {
+        Path file = new File(getClass().getResource("/Product.pkg").toURI()).toPath();
+
+        try (XarArchive xar = XarArchive.load(file, StandardLoadOption.MEMORY_MAP)) {
+            assertTrue(xar.getSignature().verify());
+            assertTrue(xar.getXSignature().verify());
+
+            List<XarArchive.Entry> entries = xar.getEntries();
+            assertEquals(2, entries.size());
+            testRead(entries);
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            xar.writeTo(bos);
+            assertArrayEquals(Files.readAllBytes(file), bos.toByteArray());
+        }
+    }
+
+    @Test
+    public void testInterruptedRead() throws Exception {
+        Path file = new File(getClass().getResource("/Product.pkg").toURI()).toPath();
+
+        try (XarArchive xar = XarArchive.load(file)) {
+            // An interrupted reader must not break the archive for others
+            Thread.currentThread().interrupt();
+            try {
+                testRead(xar.getEntries());
+                assertTrue(Thread.currentThread().isInterrupted());
+
+            } finally {
+                Thread.interrupted();
+            }
+
+            testRead(xar.getEntries());
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            xar.writeTo(bos);
+            assertArrayEquals(Files.readAllBytes(file), bos.toByteArray());
+        }
+    }
+
+    @Test
+    public void testStreamReader() throws Exception {
+        try (XarStreamReader reader = XarStreamReader.open(getClass().getResourceAsStream("/Product.pkg"))) {
+            assertEquals("2017-05-07T14:46:13Z", reader.getCreationTime().toInstant().toString());
+            assertTrue(reader.getSignature().verify());
+            assertTrue(reader.getXSignature().verify());
+            assertEquals(2, reader.getEntries().size());
+
+            List<String> paths = new ArrayList<>();
+            reader.readEntries((entry, input) -> {
+                paths.add(entry.getPath());
+
+                if (!entry.getName().equals("Bom")) {
+                    assertEquals(entry.getSize(), IoStreams.exhaust(input));
+                }
+            });
+
+            assertEquals(Arrays.asList("/com.test.my-test-app.pkg/Bom", "/com.test.my-test-app.pkg/Payload",
+                    "/com.test.my-test-app.pkg/PackageInfo", "/Distribution"), paths);
+        }
+    }
+
+    @Test
+    public void testStreamReaderSharedData() throws Exception {
+        // Larger than the head, which is retained
+        byte[] data = new byte[1_000_000];
+        new Random(8).nextBytes(data);
+
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            xarBuilder.getRoot().addFile("a", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(data));
+            xarBuilder.getRoot().addFile("b", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(data));
+            xarBuilder.getRoot().addFile("c", EncodingAlgorithm.NONE, new ByteArrayInputStream(data));
+
+            byte[] bytes;
+            try (XarArchive xar = xarBuilder.build()) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                xar.writeTo(bos);
+
+                // Point the second entry at the data of the first one, like a hard link
+                String offset = "<offset>" + (20 + xar.getEntry("a").getCompressedSize()) + "</offset>";
+                bytes = rewriteToc(bos.toByteArray(), (toc) -> toc.replace(offset, "<offset>20</offset>"));
+            }
+
+            try (XarStreamReader reader = XarStreamReader.open(new ByteArrayInputStream(bytes))) {
+                List<String> names = new ArrayList<>();
+                reader.readEntries((entry, input) -> {
+                    names.add(entry.getName());
+                    assertArrayEquals(data, readBytes(input));
+                });
+
+                Collections.sort(names);
+                assertEquals(Arrays.asList("a", "b", "c"), names);
+            }
+        }
+    }
+
+    @Test
+    public void testTruncatedHeader() throws Exception {
+        Path file = new File(getClass().getResource("/Product.pkg").toURI()).toPath();
+        byte[] data = Arrays.copyOf(Files.readAllBytes(file), 28);
+
+        // Declare a ToC, which is much longer than the data
+        ByteBuffer.wrap(data).putLong(8, Integer.MAX_VALUE - 1024);
+        Path truncated = fileInTargetDir("truncated.xar").toPath();
+        Files.write(truncated, data);
+
+        try {
+            XarArchive.load(truncated).close();
+            fail();
+
+        } catch (IOException e) {
+            // expected
+        }
+
+        try {
+            XarArchive.load(truncated, StandardLoadOption.MEMORY_MAP).close();
+            fail();
+
+        } catch (IOException e) {
+            // expected
+        }
+
+        try {
+            XarArchive.load(() -> new ByteArrayInputStream(data)).close();
+            fail();
+
+        } catch (IOException e) {
+            // expected
+        }
+
+        try {
+            XarStreamReader.open(new ByteArrayInputStream(data)).close();
+            fail();
+
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReadAll() throws Exception {
+        try (XarArchive xar = XarArchive.load(new File(getClass().getResource("/Product.pkg").toURI()).toPath())) {
+            List<XarArchive.Entry> entries = new ArrayList<>(xar.entriesInHeapOrder());
+            Collections.reverse(entries);
+
+            for (int maxGap : new int[]{0, XarArchive.DEFAULT_READ_GAP}) {
+                List<XarArchive.Entry> handled = new ArrayList<>();
+                xar.readAll(entries, maxGap, (entry, input) -> {
+                    handled.add(entry);
+
+                    try (InputStream is = entry.newInputStream()) {
+                        assertArrayEquals(readBytes(is), readBytes(input));
+                    }
+                });
+
+                assertEquals(xar.entriesInHeapOrder(), handled);
+            }
         }
     }
 
@@ -133,6 +373,977 @@ public class XarArchiveTest {
         }
     }
 
+    @Test
+    public void testLoadReadAhead() throws Exception {
+        byte[] data = new byte[3 * 1024 * 1024 + 1];
+        new Random(0).nextBytes(data);
+
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            xarBuilder.getRoot().addFile("random", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(data));
+
+            Path xarFile = fileInTargetDir("test-read-ahead.xar").toPath();
+            try {
+                try (XarArchive originalXar = xarBuilder.build(); OutputStream os = Files.newOutputStream(xarFile)) {
+                    originalXar.writeTo(os);
+                }
+
+                try (XarArchive xar = XarArchive.load(xarFile, StandardLoadOption.READ_AHEAD)) {
+                    XarArchive.Entry entry = xar.getEntry("random");
+
+                    try (InputStream is = entry.newInputStream()) {
+                        assertArrayEquals(data, readBytes(is));
+                    }
+
+                    // Closing before the end must stop reading ahead, and still verify checksums
+                    try (InputStream is = entry.newInputStream()) {
+                        assertEquals(data[0] & 0xFF, is.read());
+                    }
+                }
+
+                // Reads which cannot be run in the background are done by the reader
+                List<Runnable> queued = new ArrayList<>();
+                Executor[] executors = {(r) -> {
+                    throw new RejectedExecutionException();
+                }, queued::add};
+
+                for (Executor executor : executors) {
+                    try (XarArchive xar = XarArchive.load(xarFile, ReadAheadExecutor.of(executor))) {
+                        try (InputStream is = xar.getEntry("random").newInputStream()) {
+                            assertArrayEquals(data, readBytes(is));
+                        }
+                    }
+                }
+
+                assertEquals(1, queued.size());
+                queued.get(0).run();
+
+                // Streams failing to start return their inflaters to the pool
+                CodecPoolStatistics stats = CodecPoolStatistics.getInstance();
+                try (XarArchive xar = XarArchive.load(xarFile, ReadAheadExecutor.of((r) -> {
+                    throw new IllegalStateException("Executor failure");
+                }))) {
+                    long misses = stats.getInflaterMisses();
+
+                    for (int i = 0; i < 100; i++) {
+                        try {
+                            xar.getEntry("random").newInputStream();
+                            fail();
+
+                        } catch (IllegalStateException e) {
+                            // expected
+                        }
+                    }
+
+                    assertTrue(stats.getInflaterMisses() <= misses + 1);
+                }
+
+            } finally {
+                Files.deleteIfExists(xarFile);
+            }
+        }
+    }
+
+    @Test
+    public void testTransferToAndRawAccess() throws Exception {
+        byte[] data = new byte[200_000];
+        new Random(1).nextBytes(data);
+
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            xarBuilder.getRoot().addFile("stored", EncodingAlgorithm.NONE, new ByteArrayInputStream(data));
+            xarBuilder.getRoot().addFile("zlib", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(data));
+            xarBuilder.getRoot().addDirectory("dir");
+
+            Path xarFile = fileInTargetDir("test-transfer.xar").toPath();
+            try {
+                try (XarArchive originalXar = xarBuilder.build(); OutputStream os = Files.newOutputStream(xarFile)) {
+                    originalXar.writeTo(os);
+                }
+
+                for (XarArchive.LoadOption[] options : new XarArchive.LoadOption[][]{{}, {StandardLoadOption.MEMORY_MAP}}) {
+                    try (XarArchive xar = XarArchive.load(xarFile, options)) {
+                        for (String name : new String[]{"stored", "zlib"}) {
+                            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                            assertEquals(data.length, xar.getEntry(name).transferTo(Channels.newChannel(bos)));
+                            assertArrayEquals(data, bos.toByteArray());
+                        }
+
+                        assertEquals(0, xar.getEntry("dir").transferTo(Channels.newChannel(new ByteArrayOutputStream()), false));
+
+                        XarArchive.Entry zlib = xar.getEntry("zlib");
+                        assertEquals(EncodingAlgorithm.ZLIB, zlib.getEncoding());
+                        assertEquals(ChecksumAlgorithm.SHA1, zlib.getArchivedChecksumAlgorithm());
+
+                        byte[] raw;
+                        try (InputStream is = zlib.newRawInputStream()) {
+                            raw = readBytes(is);
+                        }
+
+                        assertEquals(zlib.getCompressedSize(), raw.length);
+                        assertArrayEquals(ChecksumAlgorithm.SHA1.getInstance().digest(raw), zlib.getArchivedChecksum());
+                        assertArrayEquals(data, readBytes(new InflaterInputStream(new ByteArrayInputStream(raw))));
+                        assertNull(xar.getEntry("dir").newRawInputStream());
+
+                        // Writes to a non-blocking channel may make no progress
+                        Pipe pipe = Pipe.open();
+                        try {
+                            pipe.sink().configureBlocking(false);
+                            xar.getEntry("stored").transferTo(pipe.sink(), false);
+                            fail();
+
+                        } catch (IllegalArgumentException e) {
+                            // expected
+
+                        } finally {
+                            pipe.sink().close();
+                            pipe.source().close();
+                        }
+                    }
+                }
+
+                // A file truncated after loading must not make the transfer spin
+                try (XarArchive xar = XarArchive.load(xarFile)) {
+                    try (FileChannel channel = FileChannel.open(xarFile, StandardOpenOption.WRITE)) {
+                        channel.truncate(channel.size() / 2);
+                    }
+
+                    xar.getEntry("stored").transferTo(Channels.newChannel(new ByteArrayOutputStream()), false);
+                    fail();
+
+                } catch (EOFException e) {
+                    // expected
+                }
+
+            } finally {
+                Files.deleteIfExists(xarFile);
+            }
+        }
+    }
+
+    @Test
+    public void testEntryLookup() throws Exception {
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            XarBuilder.Directory upper = xarBuilder.getRoot().addDirectory("Dir");
+            for (int i = 39; i >= 0; i--) {
+                upper.addFile(String.format("f%02d", i), EncodingAlgorithm.NONE, new ByteArrayInputStream(new byte[0]));
+            }
+
+            xarBuilder.getRoot().addDirectory("dir").addFile("y", EncodingAlgorithm.NONE, new ByteArrayInputStream(new byte[0]));
+
+            try (XarArchive xar = xarBuilder.build()) {
+                assertEquals("/Dir/f07", xar.getEntry("/Dir/f07").getPath());
+                assertNull(xar.getEntry("/dir/f07"));
+                assertNull(xar.getEntry("/Dir/"));
+                assertNull(xar.getEntry("/Dir//f07"));
+                assertNull(xar.getEntry("/"));
+
+                // The first matching directory does not contain the entry
+                assertEquals("/dir/y", xar.getEntry("/DIR/Y", true).getPath());
+                assertEquals("/Dir/f07", xar.getEntry("/DIR/F07", true).getPath());
+
+                List<XarArchive.Entry> under = xar.entriesUnder("/Dir");
+                assertEquals(40, under.size());
+                for (int i = 0; i < under.size(); i++) {
+                    assertEquals(String.format("/Dir/f%02d", i), under.get(i).getPath());
+                }
+
+                assertEquals(1, xar.entriesUnder("dir/").size());
+                assertEquals(43, xar.entriesUnder("/").size());
+
+                // An entry without a name does not break lookups of the others
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                xar.writeTo(bos);
+                byte[] bytes = rewriteToc(bos.toByteArray(), (toc) -> toc.replace("<name>f07</name>", ""));
+
+                try (XarArchive rewrittenXar = XarArchive.load(() -> new ByteArrayInputStream(bytes))) {
+                    assertEquals("/Dir/f08", rewrittenXar.getEntry("/Dir/f08").getPath());
+                    assertEquals("/Dir/f08", rewrittenXar.getEntry("/DIR/F08", true).getPath());
+                    assertNull(rewrittenXar.getEntry("/Dir/f07"));
+                    assertNull(rewrittenXar.getEntry("/Dir/null").getName());
+                    assertEquals(40, rewrittenXar.entriesUnder("/Dir").size());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNewChannel() throws Exception {
+        byte[] data = new byte[200_000];
+        new Random(2).nextBytes(data);
+
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            xarBuilder.getRoot().addFile("stored", EncodingAlgorithm.NONE, new ByteArrayInputStream(data));
+            xarBuilder.getRoot().addFile("zlib", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(data));
+            xarBuilder.getRoot().addDirectory("dir");
+
+            Path xarFile = fileInTargetDir("test-channel.xar").toPath();
+            try {
+                try (XarArchive originalXar = xarBuilder.build(); OutputStream os = Files.newOutputStream(xarFile)) {
+                    originalXar.writeTo(os);
+                }
+
+                for (XarArchive.LoadOption[] options : new XarArchive.LoadOption[][]{{}, {StandardLoadOption.MEMORY_MAP}}) {
+                    try (XarArchive xar = XarArchive.load(xarFile, options)) {
+                        try (SeekableByteChannel channel = xar.getEntry("stored").newChannel()) {
+                            assertEquals(data.length, channel.size());
+
+                            ByteBuffer buf = ByteBuffer.allocate(100);
+                            channel.position(150_000);
+                            while (buf.hasRemaining()) {
+                                assertTrue(channel.read(buf) > 0);
+                            }
+
+                            assertArrayEquals(Arrays.copyOfRange(data, 150_000, 150_100), buf.array());
+                            assertEquals(150_100, channel.position());
+
+                            // Reads stop at the end of the entry
+                            ByteBuffer tail = ByteBuffer.allocateDirect(1000);
+                            channel.position(data.length - 10);
+                            assertEquals(10, channel.read(tail));
+                            assertEquals(-1, channel.read(tail));
+
+                            channel.position(data.length + 1);
+                            assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+
+                            try {
+                                channel.write(ByteBuffer.allocate(1));
+                                fail();
+
+                            } catch (NonWritableChannelException e) {
+                                // expected
+                            }
+                        }
+
+                        try {
+                            xar.getEntry("zlib").newChannel();
+                            fail();
+
+                        } catch (UnsupportedOperationException e) {
+                            // expected
+                        }
+
+                        assertNull(xar.getEntry("dir").newChannel());
+
+                        xar.getEntry("stored").verify();
+                        xar.getEntry("zlib").verify();
+                        xar.getEntry("dir").verify();
+                    }
+                }
+
+            } finally {
+                Files.deleteIfExists(xarFile);
+            }
+        }
+    }
+
+    @Test
+    public void testSeekIndex() throws Exception {
+        Random random = new Random(3);
+        byte[] data = new byte[1024 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(16));
+        }
+
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            xarBuilder.getRoot().addFile("stored", EncodingAlgorithm.NONE, new ByteArrayInputStream(data));
+            xarBuilder.getRoot().addFile("zlib", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(data));
+            xarBuilder.getRoot().addFile("other", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(new byte[100]));
+
+            Path xarFile = fileInTargetDir("test-seek.xar").toPath();
+            try {
+                try (XarArchive originalXar = xarBuilder.build(); OutputStream os = Files.newOutputStream(xarFile)) {
+                    originalXar.writeTo(os);
+                }
+
+                ByteArrayOutputStream savedIndex = new ByteArrayOutputStream();
+
+                try (XarArchive xar = XarArchive.load(xarFile)) {
+                    XarArchive.Entry zlib = xar.getEntry("zlib");
+                    int offset = data.length - 1000;
+
+                    // Without an index, the entry is decoded from the start
+                    assertNull(zlib.getSeekIndex());
+                    try (InputStream is = zlib.newInputStream(offset)) {
+                        assertArrayEquals(Arrays.copyOfRange(data, offset, data.length), readBytes(is));
+                    }
+
+                    XarArchive.SeekIndex seekIndex = zlib.createSeekIndex(64 * 1024);
+                    assertSame(seekIndex, zlib.getSeekIndex());
+                    assertTrue(seekIndex.getCheckpointCount() > 0);
+                    seekIndex.writeTo(savedIndex);
+
+                    try (InputStream is = zlib.newInputStream(offset)) {
+                        assertArrayEquals(Arrays.copyOfRange(data, offset, data.length), readBytes(is));
+                    }
+
+                    try (InputStream is = xar.getEntry("stored").newInputStream(offset)) {
+                        assertArrayEquals(Arrays.copyOfRange(data, offset, data.length), readBytes(is));
+                    }
+
+                    try {
+                        xar.getEntry("stored").createSeekIndex(64 * 1024);
+                        fail();
+
+                    } catch (UnsupportedOperationException e) {
+                        // expected
+                    }
+                }
+
+                try (XarArchive xar = XarArchive.load(xarFile)) {
+                    XarArchive.Entry zlib = xar.getEntry("zlib");
+                    zlib.loadSeekIndex(new ByteArrayInputStream(savedIndex.toByteArray()));
+
+                    for (int offset = 0; offset < data.length; offset += 99_999) {
+                        try (InputStream is = zlib.newInputStream(offset)) {
+                            assertArrayEquals(Arrays.copyOfRange(data, offset, data.length), readBytes(is));
+                        }
+                    }
+
+                    try {
+                        xar.getEntry("other").loadSeekIndex(new ByteArrayInputStream(savedIndex.toByteArray()));
+                        fail();
+
+                    } catch (IOException e) {
+                        // expected
+                    }
+                }
+
+                // An index is not created for data not matching the declared size
+                byte[] bytes = rewriteToc(Files.readAllBytes(xarFile), (toc) -> toc.replace("<size>" + data.length + "</size>", "<size>1000</size>"));
+                try (XarArchive xar = XarArchive.load(() -> new ByteArrayInputStream(bytes))) {
+                    try {
+                        xar.getEntry("zlib").createSeekIndex(64 * 1024);
+                        fail();
+
+                    } catch (IOException e) {
+                        // expected
+                    }
+
+                    assertNull(xar.getEntry("zlib").getSeekIndex());
+                }
+
+            } finally {
+                Files.deleteIfExists(xarFile);
+            }
+        }
+    }
+
+    @Test
+    public void testEntryCache() throws Exception {
+        byte[] data = new byte[10_000];
+        new Random(4).nextBytes(data);
+
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            xarBuilder.getRoot().addFile("a", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(data));
+            xarBuilder.getRoot().addFile("b", EncodingAlgorithm.NONE, new ByteArrayInputStream(data));
+            xarBuilder.getRoot().addFile("big", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(new byte[20_000]));
+
+            Path xarFile = fileInTargetDir("test-cache.xar").toPath();
+            try {
+                try (XarArchive originalXar = xarBuilder.build(); OutputStream os = Files.newOutputStream(xarFile)) {
+                    originalXar.writeTo(os);
+                }
+
+                EntryCache cache = EntryCache.create(15_000, 10_000);
+
+                try (XarArchive xar = XarArchive.load(xarFile, cache)) {
+                    for (String name : new String[]{"a", "a", "b", "big"}) {
+                        try (InputStream is = xar.getEntry(name).newInputStream()) {
+                            readBytes(is);
+                        }
+                    }
+                }
+
+                // Only "a" and "b" are cacheable, and "a" has been evicted by "b"
+                assertEquals(1, cache.getHits());
+                assertEquals(2, cache.getMisses());
+                assertEquals(1, cache.getEvictions());
+                assertEquals(data.length, cache.getSize());
+
+                // The cache outlives archives
+                try (XarArchive xar = XarArchive.load(xarFile, cache)) {
+                    try (InputStream is = xar.getEntry("b").newInputStream()) {
+                        assertArrayEquals(data, readBytes(is));
+                    }
+                }
+
+                assertEquals(2, cache.getHits());
+
+                cache.clear();
+                assertEquals(0, cache.getSize());
+
+                // Options implemented elsewhere are rejected rather than ignored
+                try {
+                    XarArchive.load(xarFile, new XarArchive.LoadOption() {
+                    }).close();
+                    fail();
+
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+
+            } finally {
+                Files.deleteIfExists(xarFile);
+            }
+        }
+    }
+
+    @Test
+    public void testEntryCacheWrongSize() throws Exception {
+        byte[] data = new byte[1000];
+        Arrays.fill(data, (byte) 'a');
+
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            xarBuilder.getRoot().addFile("a", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(data));
+
+            Path xarFile = fileInTargetDir("test-cache-size.xar").toPath();
+            try {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                try (XarArchive originalXar = xarBuilder.build()) {
+                    originalXar.writeTo(bos);
+                }
+
+                // Whatever the declared size, the cache must not change the data read
+                for (String size : new String[]{"500", "2000"}) {
+                    Files.write(xarFile, rewriteToc(bos.toByteArray(), (toc) -> toc.replace("<size>1000</size>", "<size>" + size + "</size>")));
+
+                    EntryCache cache = EntryCache.create(10_000, 10_000);
+
+                    try (XarArchive xar = XarArchive.load(xarFile, cache)) {
+                        for (int i = 0; i < 2; i++) {
+                            try (InputStream is = xar.getEntry("a").newInputStream()) {
+                                assertArrayEquals(data, readBytes(is));
+                            }
+                        }
+                    }
+
+                    assertEquals(0, cache.getSize());
+                }
+
+            } finally {
+                Files.deleteIfExists(xarFile);
+            }
+        }
+    }
+
+    @Test
+    public void testEntryCacheDuplicateIds() throws Exception {
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            xarBuilder.getRoot().addFile("a", EncodingAlgorithm.ZLIB, new ByteArrayInputStream("first".getBytes("UTF-8")));
+            xarBuilder.getRoot().addFile("b", EncodingAlgorithm.ZLIB, new ByteArrayInputStream("second".getBytes("UTF-8")));
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (XarArchive originalXar = xarBuilder.build()) {
+                originalXar.writeTo(bos);
+            }
+
+            // Entries sharing an ID do not share cached data
+            Path xarFile = fileInTargetDir("test-cache-ids.xar").toPath();
+            try {
+                Files.write(xarFile, rewriteToc(bos.toByteArray(), (toc) -> toc.replace("id=\"2\"", "id=\"1\"")));
+                EntryCache cache = EntryCache.create(10_000, 10_000);
+
+                try (XarArchive xar = XarArchive.load(xarFile, cache)) {
+                    assertEquals(xar.getEntry("a").getId(), xar.getEntry("b").getId());
+
+                    for (int i = 0; i < 2; i++) {
+                        try (InputStream is = xar.getEntry("a").newInputStream()) {
+                            assertEquals("first", new String(readBytes(is), "UTF-8"));
+                        }
+
+                        try (InputStream is = xar.getEntry("b").newInputStream()) {
+                            assertEquals("second", new String(readBytes(is), "UTF-8"));
+                        }
+                    }
+                }
+
+            } finally {
+                Files.deleteIfExists(xarFile);
+            }
+        }
+    }
+
+    @Test
+    public void testTocCache() throws Exception {
+        Path xarFile = fileInTargetDir("test-toc-cache.pkg").toPath();
+        Path cacheDir = fileInTargetDir("test-toc-cache").toPath();
+
+        try {
+            Files.copy(new File(getClass().getResource("/Product.pkg").toURI()).toPath(), xarFile, StandardCopyOption.REPLACE_EXISTING);
+            TocCache tocCache = TocCache.in(cacheDir);
+
+            try (XarArchive expected = XarArchive.load(xarFile)) {
+                // The first load writes the index, the second one reads it
+                for (int i = 0; i < 2; i++) {
+                    try (XarArchive xar = XarArchive.load(xarFile, tocCache)) {
+                        assertTocCacheEquals(expected, xar);
+                    }
+                }
+
+                Path indexFile;
+                try (DirectoryStream<Path> ds = Files.newDirectoryStream(cacheDir)) {
+                    Iterator<Path> it = ds.iterator();
+                    indexFile = it.next();
+                    assertFalse(it.hasNext());
+                }
+
+                // A corrupt index is rebuilt
+                Files.write(indexFile, new byte[]{'x', 't', 'o', 'c', 0, 0, 0, 1, 0});
+                try (XarArchive xar = XarArchive.load(xarFile, tocCache)) {
+                    assertTocCacheEquals(expected, xar);
+                }
+
+                assertTrue(Files.size(indexFile) > 9);
+
+                // And one with data not matching its digest
+                byte[] corrupt = Files.readAllBytes(indexFile);
+                corrupt[corrupt.length / 2] ^= 1;
+                Files.write(indexFile, corrupt);
+                try (XarArchive xar = XarArchive.load(xarFile, tocCache)) {
+                    assertTocCacheEquals(expected, xar);
+                }
+
+                assertFalse(Arrays.equals(corrupt, Files.readAllBytes(indexFile)));
+
+                // So is a stale one
+                byte[] index = Files.readAllBytes(indexFile);
+                Files.setLastModifiedTime(xarFile, FileTime.fromMillis(Files.getLastModifiedTime(xarFile).toMillis() - 60_000));
+                try (XarArchive xar = XarArchive.load(xarFile, tocCache)) {
+                    assertTocCacheEquals(expected, xar);
+                }
+
+                assertFalse(Arrays.equals(index, Files.readAllBytes(indexFile)));
+            }
+
+        } finally {
+            Files.deleteIfExists(xarFile);
+
+            if (Files.isDirectory(cacheDir)) {
+                try (DirectoryStream<Path> ds = Files.newDirectoryStream(cacheDir)) {
+                    for (Path p : ds) {
+                        Files.delete(p);
+                    }
+                }
+
+                Files.delete(cacheDir);
+            }
+        }
+    }
+
+    @Test
+    public void testArchivePool() throws Exception {
+        List<Path> files = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+                    xarBuilder.getRoot().addFile("name", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(("archive " + i).getBytes("UTF-8")));
+
+                    Path xarFile = fileInTargetDir("test-pool-" + i + ".xar").toPath();
+                    files.add(xarFile);
+                    try (XarArchive xar = xarBuilder.build(); OutputStream os = Files.newOutputStream(xarFile)) {
+                        xar.writeTo(os);
+                    }
+                }
+            }
+
+            try (XarArchivePool pool = XarArchivePool.create(2)) {
+                try (XarArchivePool.Lease a = pool.acquire(files.get(0)); XarArchivePool.Lease b = pool.acquire(files.get(1))) {
+                    assertEquals("archive 0", readName(a.getArchive()));
+                    assertEquals("archive 1", readName(b.getArchive()));
+                }
+
+                try (XarArchivePool.Lease a = pool.acquire(files.get(0))) {
+                    assertEquals(1, pool.getHits());
+                    assertEquals(2, pool.getMisses());
+
+                    // The least recently used archive is evicted and closed
+                    try (XarArchivePool.Lease c = pool.acquire(files.get(2))) {
+                        assertEquals("archive 2", readName(c.getArchive()));
+                        assertEquals(1, pool.getEvictions());
+                        assertEquals(2, pool.getOpenCount());
+                    }
+
+                    // A leased archive is evicted, but stays open until released
+                    try (XarArchivePool.Lease b = pool.acquire(files.get(1))) {
+                        assertEquals(2, pool.getEvictions());
+                        assertEquals(3, pool.getOpenCount());
+                        assertEquals("archive 1", readName(b.getArchive()));
+                        assertEquals("archive 0", readName(a.getArchive()));
+                    }
+                }
+
+                assertEquals(2, pool.getOpenCount());
+
+                try {
+                    pool.acquire(fileInTargetDir("test-pool-missing.xar").toPath());
+                    fail();
+
+                } catch (IOException e) {
+                    // Expected
+                }
+
+                assertEquals(2, pool.getOpenCount());
+
+                XarArchivePool.Lease c = pool.acquire(files.get(2));
+                pool.close();
+                assertEquals(1, pool.getOpenCount());
+                assertEquals("archive 2", readName(c.getArchive()));
+                c.close();
+                assertEquals(0, pool.getOpenCount());
+            }
+
+        } finally {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    public void testFileSystem() throws Exception {
+        byte[] data = new byte[200_000];
+        Random random = new Random(5);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(16));
+        }
+
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            XarBuilder.Directory dir = xarBuilder.getRoot().addDirectory("d");
+            dir.addFile("stored", EncodingAlgorithm.NONE, new ByteArrayInputStream(data));
+            dir.addFile("zipped", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(data));
+            xarBuilder.getRoot().addFile("top", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(new byte[0]));
+
+            Path xarFile = fileInTargetDir("test-fs.xar").toPath();
+            try {
+                try (XarArchive originalXar = xarBuilder.build(); OutputStream os = Files.newOutputStream(xarFile)) {
+                    originalXar.writeTo(os);
+                }
+
+                URI uri = URI.create("xar:" + xarFile.toUri());
+
+                try (FileSystem fs = FileSystems.newFileSystem(uri, Collections.emptyMap())) {
+                    assertSame(fs, FileSystems.getFileSystem(uri));
+
+                    List<String> paths = new ArrayList<>();
+                    try (Stream<Path> stream = Files.walk(fs.getPath("/"))) {
+                        stream.forEach((p) -> paths.add(p.toString()));
+                    }
+
+                    Collections.sort(paths);
+                    assertEquals(Arrays.asList("/", "/d", "/d/stored", "/d/zipped", "/top"), paths);
+
+                    Path stored = fs.getPath("/d", "stored");
+                    Path zipped = fs.getPath("d/zipped");
+                    assertTrue(Files.isDirectory(fs.getPath("/d")));
+                    assertTrue(Files.isRegularFile(stored));
+                    assertEquals(data.length, Files.size(zipped));
+                    assertEquals(0L, Files.readAttributes(fs.getPath("/top"), "size").get("size"));
+                    assertFalse(Files.exists(fs.getPath("/d/missing")));
+                    assertArrayEquals(data, Files.readAllBytes(stored));
+                    assertArrayEquals(data, Files.readAllBytes(zipped));
+
+                    try (InputStream is = Files.newInputStream(zipped)) {
+                        assertArrayEquals(data, readBytes(is));
+                    }
+
+                    // Random access, including backwards for the encoded entry
+                    for (Path path : Arrays.asList(stored, zipped)) {
+                        try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+                            for (int offset : new int[]{150_000, 1000, 199_990}) {
+                                ByteBuffer buf = ByteBuffer.allocate(100);
+                                channel.position(offset);
+                                while (buf.hasRemaining() && (channel.read(buf) > 0)) {
+                                }
+
+                                buf.flip();
+                                assertEquals(ByteBuffer.wrap(data, offset, Math.min(100, data.length - offset)), buf);
+                            }
+                        }
+                    }
+
+                    List<String> matched = new ArrayList<>();
+                    try (DirectoryStream<Path> ds = Files.newDirectoryStream(fs.getPath("/d"), "*ed")) {
+                        ds.forEach((p) -> matched.add(p.getFileName().toString()));
+                    }
+
+                    Collections.sort(matched);
+                    assertEquals(Arrays.asList("stored", "zipped"), matched);
+
+                    assertEquals(zipped.toAbsolutePath(), Paths.get(zipped.toUri()));
+                    assertEquals("/d", stored.getParent().toString());
+                    assertEquals(fs.getPath("/d/zipped"), stored.resolveSibling("x/../zipped").normalize());
+                    assertEquals(fs.getPath("../top"), stored.getParent().relativize(fs.getPath("/top")));
+
+                    try {
+                        Files.newByteChannel(stored, StandardOpenOption.WRITE);
+                        fail();
+
+                    } catch (ReadOnlyFileSystemException e) {
+                        // Expected
+                    }
+
+                    try {
+                        FileSystems.newFileSystem(uri, Collections.emptyMap());
+                        fail();
+
+                    } catch (FileSystemAlreadyExistsException e) {
+                        // Expected
+                    }
+                }
+
+                try {
+                    FileSystems.getFileSystem(uri);
+                    fail();
+
+                } catch (FileSystemNotFoundException e) {
+                    // Expected
+                }
+
+                try (FileSystem fs = FileSystems.newFileSystem(xarFile, (ClassLoader) null)) {
+                    assertTrue(Files.isDirectory(fs.getPath("/d")));
+                }
+
+                // Only one of concurrently created file systems wins, the others are closed
+                ExecutorService executor = Executors.newFixedThreadPool(4);
+                try {
+                    List<Future<FileSystem>> futures = new ArrayList<>();
+                    for (int i = 0; i < 4; i++) {
+                        futures.add(executor.submit(() -> FileSystems.newFileSystem(uri, Collections.emptyMap())));
+                    }
+
+                    List<FileSystem> created = new ArrayList<>();
+                    for (Future<FileSystem> future : futures) {
+                        try {
+                            created.add(future.get());
+
+                        } catch (ExecutionException e) {
+                            assertTrue(e.getCause() instanceof FileSystemAlreadyExistsException);
+                        }
+                    }
+
+                    assertEquals(1, created.size());
+                    assertSame(created.get(0), FileSystems.getFileSystem(uri));
+                    created.get(0).close();
+
+                } finally {
+                    executor.shutdown();
+                }
+
+            } finally {
+                Files.deleteIfExists(xarFile);
+            }
+        }
+    }
+
+    @Test
+    public void testReadAsync() throws Exception {
+        byte[] data = new byte[100_000];
+        new Random(6).nextBytes(data);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            XarBuilder.Directory dir = xarBuilder.getRoot().addDirectory("d");
+            for (int i = 0; i < 5; i++) {
+                dir.addFile("file-" + i, (i % 2 == 0) ? EncodingAlgorithm.ZLIB : EncodingAlgorithm.NONE, new ByteArrayInputStream(data, i, data.length - i));
+            }
+
+            try (XarArchive xar = xarBuilder.build()) {
+                assertArrayEquals(Arrays.copyOfRange(data, 2, data.length), xar.getEntry("/d/file-2").readAsync(executor).get());
+                assertEquals(0, xar.getEntry("/d").readAsync(executor).get().length);
+
+                List<String> names = Collections.synchronizedList(new ArrayList<>());
+                xar.readAllAsync((e) -> e.getName().compareTo("file-2") >= 0, (entry, input) -> {
+                    assertEquals(data.length - Integer.parseInt(entry.getName().substring(5)), IoStreams.exhaust(input));
+                    names.add(entry.getName());
+                }, executor).get();
+
+                Collections.sort(names);
+                assertEquals(Arrays.asList("file-2", "file-3", "file-4"), names);
+
+                // Checked exceptions of the sink complete the future as they are
+                try {
+                    xar.readAllAsync((e) -> true, (entry, input) -> {
+                        throw new IOException("Sink failure");
+                    }, executor).get();
+                    fail();
+
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IOException);
+                    assertEquals("Sink failure", e.getCause().getMessage());
+                }
+
+                // The data is read to its end, and the declared size does not decide how much memory is allocated
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                xar.writeTo(bos);
+
+                for (String size : new String[]{"50000", "2147483000"}) {
+                    byte[] bytes = rewriteToc(bos.toByteArray(), (toc) -> toc.replace("<size>99998</size>", "<size>" + size + "</size>"));
+
+                    try (XarArchive rewrittenXar = XarArchive.load(() -> new ByteArrayInputStream(bytes))) {
+                        assertArrayEquals(Arrays.copyOfRange(data, 2, data.length), rewrittenXar.getEntry("/d/file-2").readAsync(executor).get());
+                    }
+                }
+            }
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPublisher() throws Exception {
+        byte[] data = new byte[100_000];
+        Random random = new Random(7);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(16));
+        }
+
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            xarBuilder.getRoot().addFile("zipped", EncodingAlgorithm.ZLIB, new ByteArrayInputStream(data));
+            xarBuilder.getRoot().addFile("stored", EncodingAlgorithm.NONE, new ByteArrayInputStream(data));
+            xarBuilder.getRoot().addDirectory("dir");
+
+            Path xarFile = fileInTargetDir("test-publisher.xar").toPath();
+            try {
+                try (XarArchive originalXar = xarBuilder.build(); OutputStream os = Files.newOutputStream(xarFile)) {
+                    originalXar.writeTo(os);
+                }
+
+                try (XarArchive xar = XarArchive.load(xarFile)) {
+                    // Requesting one chunk at a time from onNext does not recurse
+                    ChunkSubscriber subscriber = new ChunkSubscriber(1, true);
+                    xar.getEntry("zipped").publisher(16 * 1024, Runnable::run).subscribe(subscriber);
+                    assertTrue(subscriber.completed);
+                    assertEquals(7, subscriber.chunks);
+                    assertArrayEquals(data, subscriber.data.toByteArray());
+
+                    // Only requested chunks are emitted
+                    subscriber = new ChunkSubscriber(2, false);
+                    xar.getEntry("stored").publisher(10_000, Runnable::run).subscribe(subscriber);
+                    assertEquals(2, subscriber.chunks);
+                    assertFalse(subscriber.completed);
+                    subscriber.subscription.request(Long.MAX_VALUE);
+                    assertTrue(subscriber.completed);
+                    assertArrayEquals(data, subscriber.data.toByteArray());
+
+                    subscriber = new ChunkSubscriber(1, false);
+                    xar.getEntry("dir").publisher(1024, Runnable::run).subscribe(subscriber);
+                    assertTrue(subscriber.completed);
+                    assertEquals(0, subscriber.chunks);
+
+                    // A subscriber failing in onNext is cancelled, rather than signalled the failure
+                    AtomicInteger signals = new AtomicInteger();
+                    List<Subscription> subscriptions = new ArrayList<>();
+                    xar.getEntry("zipped").publisher(1024, Runnable::run).subscribe(new Subscriber<ByteBuffer>() {
+                        @Override
+                        public void onSubscribe(Subscription subscription) {
+                            subscriptions.add(subscription);
+                        }
+
+                        @Override
+                        public void onNext(ByteBuffer item) {
+                            signals.incrementAndGet();
+                            throw new IllegalStateException("Subscriber failure");
+                        }
+
+                        @Override
+                        public void onError(Throwable throwable) {
+                            signals.incrementAndGet();
+                        }
+
+                        @Override
+                        public void onComplete() {
+                            signals.incrementAndGet();
+                        }
+                    });
+
+                    try {
+                        subscriptions.get(0).request(2);
+                        fail();
+
+                    } catch (IllegalStateException e) {
+                        assertEquals("Subscriber failure", e.getMessage());
+                    }
+
+                    subscriptions.get(0).request(Long.MAX_VALUE);
+                    assertEquals(1, signals.get());
+
+                    ExecutorService executor = Executors.newSingleThreadExecutor();
+                    try {
+                        subscriber = new ChunkSubscriber(Long.MAX_VALUE, false);
+                        xar.getEntry("zipped").publisher(8192, executor).subscribe(subscriber);
+                        assertTrue(subscriber.latch.await(10, TimeUnit.SECONDS));
+                        assertTrue(subscriber.completed);
+                        assertArrayEquals(data, subscriber.data.toByteArray());
+
+                    } finally {
+                        executor.shutdown();
+                    }
+                }
+
+                // The data is published to its end, whatever the declared size
+                byte[] original = Files.readAllBytes(xarFile);
+                for (String size : new String[]{"50000", "200000"}) {
+                    Files.write(xarFile, rewriteToc(original, (toc) -> toc.replace("<size>100000</size>", "<size>" + size + "</size>")));
+
+                    try (XarArchive xar = XarArchive.load(xarFile)) {
+                        for (String name : new String[]{"zipped", "stored"}) {
+                            ChunkSubscriber subscriber = new ChunkSubscriber(Long.MAX_VALUE, false);
+                            xar.getEntry(name).publisher(16 * 1024, Runnable::run).subscribe(subscriber);
+                            assertTrue(subscriber.completed);
+                            assertArrayEquals(data, subscriber.data.toByteArray());
+                        }
+                    }
+                }
+
+                // Corrupt the stored entry, which is only detected once all of it has been read
+                byte[] bytes = original.clone();
+                int pos = indexOf(bytes, Arrays.copyOf(data, 64));
+                bytes[pos + data.length / 2] ^= 1;
+                Files.write(xarFile, bytes);
+
+                try (XarArchive xar = XarArchive.load(xarFile)) {
+                    ChunkSubscriber subscriber = new ChunkSubscriber(Long.MAX_VALUE, false);
+                    xar.getEntry("stored").publisher(16 * 1024, Runnable::run).subscribe(subscriber);
+                    assertEquals(7, subscriber.chunks);
+                    assertFalse(subscriber.completed);
+                    assertTrue(subscriber.error instanceof IOException);
+                }
+
+            } finally {
+                Files.deleteIfExists(xarFile);
+            }
+        }
+    }
+
+    @Test
+    public void testCodecPooling() throws Exception {
+        CodecPoolStatistics stats = CodecPoolStatistics.getInstance();
+
+        try (XarArchive xar = XarArchive.load(new File(getClass().getResource("/Product.pkg").toURI()).toPath())) {
+            XarArchive.Entry entry = xar.getEntry("/Distribution");
+            long hits = stats.getInflaterHits();
+
+            for (int i = 0; i < 3; i++) {
+                try (InputStream is = entry.newInputStream()) {
+                    IoStreams.exhaust(is);
+                }
+            }
+
+            assertTrue(stats.getInflaterHits() >= hits + 2);
+        }
+
+        try (XarBuilder xarBuilder = XarBuilder.getInstance()) {
+            long hits = stats.getDeflaterHits();
+
+            for (int i = 0; i < 3; i++) {
+                xarBuilder.getRoot().addFile("file-" + i, EncodingAlgorithm.ZLIB, new ByteArrayInputStream(new byte[100]));
+            }
+
+            assertTrue(stats.getDeflaterHits() >= hits + 2);
+        }
+    }
+
     @Test
     @Ignore("Calls external services, so should be run manually")
     public void testSigning() throws Exception {
@@ -169,6 +1380,36 @@ public class XarArchiveTest {
         }
     }
 
+    private static void assertTocCacheEquals(XarArchive expected, XarArchive actual) throws Exception {
+        assertEquals(expected.getCreationTime(), actual.getCreationTime());
+        assertEquals(expected.getSignature().getCertificates(), actual.getSignature().getCertificates());
+        assertTrue(actual.getSignature().verify());
+        assertEquals(expected.getXSignature().getCertificates(), actual.getXSignature().getCertificates());
+        assertTrue(actual.getXSignature().verify());
+
+        List<XarArchive.Entry> expectedEntries = expected.entriesUnder("/");
+        List<XarArchive.Entry> actualEntries = actual.entriesUnder("/");
+        assertEquals(expectedEntries.size(), actualEntries.size());
+
+        for (int i = 0; i < expectedEntries.size(); i++) {
+            XarArchive.Entry e = expectedEntries.get(i);
+            XarArchive.Entry a = actualEntries.get(i);
+            assertEquals(e.getPath(), a.getPath());
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.isDirectory(), a.isDirectory());
+            assertEquals(e.getSize(), a.getSize());
+            assertEquals(e.getCompressedSize(), a.getCompressedSize());
+            assertEquals(e.getEncoding(), a.getEncoding());
+            assertArrayEquals(e.getArchivedChecksum(), a.getArchivedChecksum());
+
+            if (!e.isDirectory()) {
+                try (InputStream eis = e.newInputStream(); InputStream ais = a.newInputStream()) {
+                    assertArrayEquals(readBytes(eis), readBytes(ais));
+                }
+            }
+        }
+    }
+
     private static void assertXarEquals(XarArchive expected, XarArchive actual) {
         assertEquals(expected.getCreationTime(), actual.getCreationTime());
     }
@@ -188,6 +1429,108 @@ public class XarArchiveTest {
         }
     }
 
+    private static String readName(XarArchive xar) throws IOException {
+        try (InputStream is = xar.getEntry("name").newInputStream()) {
+            return new String(readBytes(is), "UTF-8");
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        for (int i = 0; i <= bytes.length - pattern.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + pattern.length), pattern)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static final class ChunkSubscriber implements Subscriber<ByteBuffer> {
+        private final long initialRequest;
+        private final boolean requestFromOnNext;
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private Subscription subscription;
+        private volatile int chunks;
+        private volatile boolean completed;
+        private volatile Throwable error;
+        private int depth;
+
+        ChunkSubscriber(long initialRequest, boolean requestFromOnNext) {
+            this.initialRequest = initialRequest;
+            this.requestFromOnNext = requestFromOnNext;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            assertEquals(0, depth++);
+            chunks++;
+            data.write(item.array(), item.arrayOffset() + item.position(), item.remaining());
+
+            if (requestFromOnNext) {
+                subscription.request(1);
+            }
+
+            depth--;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            latch.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Rewrites the ToC of an unsigned archive, which has a SHA-1 ToC checksum at the start of the heap.
+     */
+    private static byte[] rewriteToc(byte[] xar, UnaryOperator<String> transform) throws Exception {
+        ByteBuffer header = ByteBuffer.wrap(xar);
+        int headerSize = header.getShort(4);
+        int tocLength = (int) header.getLong(8);
+
+        String toc = new String(readBytes(new InflaterInputStream(new ByteArrayInputStream(xar, headerSize, tocLength))), "UTF-8");
+        byte[] tocBytes = transform.apply(toc).getBytes("UTF-8");
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream os = new DeflaterOutputStream(compressed)) {
+            os.write(tocBytes);
+        }
+
+        byte[] heap = Arrays.copyOfRange(xar, headerSize + tocLength, xar.length);
+        byte[] checksum = ChecksumAlgorithm.SHA1.getInstance().digest(compressed.toByteArray());
+        System.arraycopy(checksum, 0, heap, 0, checksum.length);
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        ByteBuffer newHeader = ByteBuffer.wrap(Arrays.copyOf(xar, headerSize));
+        newHeader.putLong(8, compressed.size());
+        newHeader.putLong(16, tocBytes.length);
+        result.write(newHeader.array());
+        compressed.writeTo(result);
+        result.write(heap);
+
+        return result.toByteArray();
+    }
+
+    private static byte[] readBytes(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        IoStreams.copy(is, bos);
+
+        return bos.toByteArray();
+    }
+
     private static File fileInTargetDir(String name) {
         try {
             return new File(new File(XarArchiveTest.class.getResource("/").toURI()), "../" + name).getCanonicalFile();
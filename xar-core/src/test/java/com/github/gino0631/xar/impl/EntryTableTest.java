@@ -0,0 +1,106 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.impl.jaxb.toc.FileType;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class EntryTableTest {
+    @Test
+    public void testWriteRead() throws Exception {
+        EntryTable.Builder b = new EntryTable.Builder();
+        int dir = b.add(EntryTable.NONE, 1);
+        b.setName(dir, "d");
+        b.setType(dir, FileType.DIRECTORY);
+        int file = b.add(dir, 2);
+        b.setName(file, "f");
+        b.setType(file, FileType.FILE);
+        b.setLength(file, 10);
+        b.setOffset(file, 20);
+        b.setSize(file, 30);
+        b.setEncoding(file, "application/x-gzip");
+        b.setArchivedChecksum(file, "sha1", new byte[20]);
+        b.setExtractedChecksum(file, "md5", new byte[16]);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(bos)) {
+            b.build().writeTo(dos);
+        }
+
+        EntryTable table = EntryTable.readFrom(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        assertEquals(2, table.size());
+        assertEquals("/d/f", table.getPath(file));
+        assertEquals(file, table.getFirstChild(dir));
+        assertEquals(FileType.FILE, table.getType(file));
+        assertEquals(30, table.getSize(file));
+        assertEquals("application/x-gzip", table.getEncodingStyle(file));
+        assertEquals("md5", table.getExtractedChecksumStyle(file));
+        assertEquals(16, table.getExtractedChecksum(file).length);
+    }
+
+    @Test
+    public void testReadInvalid() throws Exception {
+        EntryTable.readFrom(table(1, EntryTable.NONE, 1, (byte) 0, (byte) 0));
+
+        DataInputStream[] invalid = {
+                table(Integer.MAX_VALUE, EntryTable.NONE, 1, (byte) 0, (byte) 0),
+                table(1, 0, 1, (byte) 0, (byte) 0),
+                table(1, -2, 1, (byte) 0, (byte) 0),
+                table(2, 1, 1, (byte) 0, (byte) 0),
+                table(1, EntryTable.NONE, Integer.MAX_VALUE, (byte) 0, (byte) 0),
+                table(1, EntryTable.NONE, 1, (byte) FileType.values().length, (byte) 0),
+                table(1, EntryTable.NONE, 1, (byte) -2, (byte) 0),
+                table(1, EntryTable.NONE, 1, (byte) 0, (byte) 1),
+        };
+
+        for (DataInputStream input : invalid) {
+            try {
+                EntryTable.readFrom(input);
+                fail();
+
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    private static DataInputStream table(int size, int parent, int nameLength, byte type, byte encoding) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        try (DataOutputStream dos = new DataOutputStream(bos)) {
+            dos.writeInt(size);
+            dos.writeInt(1);
+            writeString(dos, "application/octet-stream");
+
+            // Every entry but the first one refers to the preceding entry
+            for (int i = 0; i < Math.min(size, 2); i++) {
+                dos.writeInt((i == 0) ? parent : 0);
+                dos.writeLong(i);
+                dos.writeInt(nameLength);
+                dos.write('a');
+                dos.writeByte(type);
+                dos.writeLong(1);
+                dos.writeLong(0);
+                dos.writeLong(1);
+                dos.writeByte(encoding);
+                dos.writeByte(EntryTable.NONE);
+                dos.writeByte(EntryTable.NONE);
+            }
+        }
+
+        return new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    }
+
+    private static void writeString(DataOutputStream dos, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+}
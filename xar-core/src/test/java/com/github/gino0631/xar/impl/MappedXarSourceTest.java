@@ -0,0 +1,90 @@
+package com.github.gino0631.xar.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MappedXarSourceTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testCloseWithOpenStream() throws Exception {
+        byte[] data = new byte[64 * 1024];
+        new Random(0).nextBytes(data);
+        Path file = tmp.newFile().toPath();
+        Files.write(file, data);
+
+        MappedXarSource source = new MappedXarSource(file);
+        InputStream is = source.newInputStream(0, data.length);
+        ByteBuffer buf = ((ByteBufferInput) is).readBuffer(data.length);
+
+        source.close();
+
+        // The mapping must stay valid while the stream is open
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        assertArrayEquals(data, bytes);
+
+        try {
+            is.read();
+            fail();
+
+        } catch (IOException e) {
+            // expected
+        }
+
+        is.close();
+        is.close();
+
+        try {
+            source.read(0, 1);
+            fail();
+
+        } catch (IOException e) {
+            // expected
+        }
+
+        try {
+            source.slice(0, 1);
+            fail();
+
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReadAvailablePastEnd() throws Exception {
+        Path file = tmp.newFile().toPath();
+        Files.write(file, new byte[100]);
+
+        try (MappedXarSource source = new MappedXarSource(file)) {
+            assertEquals(10, source.readAvailable(90, 20).length);
+            assertEquals(0, source.readAvailable(100, 20).length);
+            assertEquals(0, source.readAvailable(200, 20).length);
+        }
+    }
+
+    @Test
+    public void testReadPastEnd() throws Exception {
+        Path file = tmp.newFile().toPath();
+        Files.write(file, new byte[100]);
+
+        try (MappedXarSource source = new MappedXarSource(file)) {
+            ByteBuffer buf = ByteBuffer.allocate(20);
+            assertEquals(10, source.read(90, buf));
+            assertEquals(-1, source.read(100, buf));
+            assertEquals(-1, source.read(200, buf));
+        }
+    }
+}
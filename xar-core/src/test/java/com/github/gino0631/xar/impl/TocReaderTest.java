@@ -0,0 +1,127 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.impl.jaxb.ObjectFactory;
+import com.github.gino0631.xar.impl.jaxb.toc.*;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+public class TocReaderTest {
+    @Test
+    public void testReadXz() throws Exception {
+        testRead("/XZ.pkg");
+    }
+
+    @Test
+    public void testReadProduct() throws Exception {
+        testRead("/Product.pkg");
+    }
+
+    @Test
+    public void testSkipUnknownElements() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<xar><toc><unknown><file id=\"9\"/></unknown><checksum style=\"sha1\"><offset>0</offset><size>20</size></checksum>" +
+                "<file id=\"1\"><name>a</name><mode>0644</mode><type>file</type><data><length>3</length><offset>20</offset><size>4</size>" +
+                "<encoding style=\"application/octet-stream\"/><archived-checksum style=\"sha1\">0a0B</archived-checksum></data></file>" +
+                "<file id=\"2\"><name>l</name><type>symlink</type></file></toc></xar>";
+
+        EntryTable entries = testRead(xml.getBytes("UTF-8"));
+
+        assertEquals(2, entries.size());
+        assertEquals(FileType.FILE, entries.getType(0));
+        assertNull(entries.getType(1));
+        assertArrayEquals(new byte[]{0x0a, 0x0b}, entries.getArchivedChecksum(0));
+        assertNull(entries.getExtractedChecksum(0));
+        assertFalse(entries.hasData(1));
+    }
+
+    @Test(expected = TocReader.UnsupportedTocException.class)
+    public void testUnsupported() throws Exception {
+        String xml = "<xar><toc><file id=\"1\"><data><length>x</length></data></file></toc></xar>";
+
+        TocReader.read(new ByteArrayInputStream(xml.getBytes("UTF-8")), new EntryTable.Builder());
+    }
+
+    private void testRead(String name) throws Exception {
+        testRead(readTocXml(Paths.get(getClass().getResource(name).toURI()).toFile()));
+    }
+
+    private EntryTable testRead(byte[] xml) throws Exception {
+        XarToc expectedToc = ObjectFactory.unmarshal(new ByteArrayInputStream(xml)).getToc();
+        EntryTable.Builder builder = new EntryTable.Builder();
+        XarToc actualToc = TocReader.read(new ByteArrayInputStream(xml), builder);
+        EntryTable actualEntries = builder.build();
+
+        assertTocEquals(expectedToc, actualToc);
+        assertEntriesEquals(EntryTable.of(expectedToc), actualEntries);
+
+        return actualEntries;
+    }
+
+    private static byte[] readTocXml(File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            XarArchiveImpl.HeaderImpl header = new XarArchiveImpl.HeaderImpl(dis);
+            byte[] compressed = new byte[(int) header.getTocLengthCompressed()];
+            dis.readFully(compressed);
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (InputStream is = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+                byte[] buf = new byte[8192];
+                for (int n; (n = is.read(buf)) >= 0; ) {
+                    bos.write(buf, 0, n);
+                }
+            }
+
+            return bos.toByteArray();
+        }
+    }
+
+    private static void assertTocEquals(XarToc expected, XarToc actual) {
+        assertEquals(expected.getCreationTime(), actual.getCreationTime());
+        assertEquals(expected.getChecksum().getStyle(), actual.getChecksum().getStyle());
+        assertEquals(expected.getChecksum().getOffset(), actual.getChecksum().getOffset());
+        assertEquals(expected.getChecksum().getSize(), actual.getChecksum().getSize());
+        assertSignatureEquals(expected.getSignature(), actual.getSignature());
+        assertSignatureEquals(expected.getXSignature(), actual.getXSignature());
+    }
+
+    private static void assertSignatureEquals(XarSignature expected, XarSignature actual) {
+        if (expected == null) {
+            assertNull(actual);
+
+        } else {
+            assertEquals(expected.getStyle(), actual.getStyle());
+            assertEquals(expected.getOffset(), actual.getOffset());
+            assertEquals(expected.getSize(), actual.getSize());
+            assertEquals(expected.getKeyInfo().getX509Data().getCertificates(), actual.getKeyInfo().getX509Data().getCertificates());
+        }
+    }
+
+    private static void assertEntriesEquals(EntryTable expected, EntryTable actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getFirstRoot(), actual.getFirstRoot());
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getParent(i), actual.getParent(i));
+            assertEquals(expected.getFirstChild(i), actual.getFirstChild(i));
+            assertEquals(expected.getNextSibling(i), actual.getNextSibling(i));
+            assertEquals(expected.getId(i), actual.getId(i));
+            assertEquals(expected.getName(i), actual.getName(i));
+            assertEquals(expected.getType(i), actual.getType(i));
+            assertEquals(expected.hasData(i), actual.hasData(i));
+            assertEquals(expected.getLength(i), actual.getLength(i));
+            assertEquals(expected.getOffset(i), actual.getOffset(i));
+            assertEquals(expected.getSize(i), actual.getSize(i));
+            assertEquals(expected.getEncodingStyle(i), actual.getEncodingStyle(i));
+            assertEquals(expected.getArchivedChecksumStyle(i), actual.getArchivedChecksumStyle(i));
+            assertArrayEquals(expected.getArchivedChecksum(i), actual.getArchivedChecksum(i));
+            assertEquals(expected.getExtractedChecksumStyle(i), actual.getExtractedChecksumStyle(i));
+            assertArrayEquals(expected.getExtractedChecksum(i), actual.getExtractedChecksum(i));
+        }
+    }
+}
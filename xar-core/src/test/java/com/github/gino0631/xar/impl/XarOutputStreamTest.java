@@ -0,0 +1,91 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.xar.ChecksumAlgorithm;
+import com.github.gino0631.xar.EncodingAlgorithm;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class XarOutputStreamTest {
+    private static final int SIZE = 1024 * 1024 + 17;
+
+    @Test
+    public void testZlibSingleBytes() throws Exception {
+        testWrite(EncodingAlgorithm.ZLIB, 1);
+    }
+
+    @Test
+    public void testZlibSmallWrites() throws Exception {
+        testWrite(EncodingAlgorithm.ZLIB, 4096);
+    }
+
+    @Test
+    public void testZlibLargeWrites() throws Exception {
+        testWrite(EncodingAlgorithm.ZLIB, 1024 * 1024);
+    }
+
+    @Test
+    public void testZlibMixedWrites() throws Exception {
+        testWrite(EncodingAlgorithm.ZLIB, -1);
+    }
+
+    @Test
+    public void testStoredMixedWrites() throws Exception {
+        testWrite(EncodingAlgorithm.NONE, -1);
+    }
+
+    private static void testWrite(EncodingAlgorithm encodingAlgorithm, int chunkSize) throws IOException {
+        Random random = new Random(chunkSize);
+        byte[] data = new byte[SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(16));
+        }
+
+        // Output of the decorator streams XarOutputStream has to match
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (OutputStream os = encodingAlgorithm.getEncoder(expected)) {
+            os.write(data);
+        }
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        ChecksumHolder archivedChecksum = new ChecksumHolder();
+        ChecksumHolder extractedChecksum = new ChecksumHolder();
+
+        XarOutputStream xos = new XarOutputStream(actual, encodingAlgorithm,
+                ChecksumAlgorithm.SHA1, archivedChecksum, ChecksumAlgorithm.MD5, extractedChecksum);
+
+        try (OutputStream os = xos) {
+            for (int off = 0; off < data.length; ) {
+                int len = Math.min((chunkSize > 0) ? chunkSize : random.nextInt(100_000), data.length - off);
+
+                if (len == 1) {
+                    os.write(data[off]);
+
+                } else {
+                    os.write(data, off, len);
+                }
+
+                off += len;
+            }
+        }
+
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        assertEquals(actual.size(), xos.getArchivedSize());
+        assertEquals(data.length, xos.getExtractedSize());
+        assertArrayEquals(ChecksumAlgorithm.SHA1.getInstance().digest(actual.toByteArray()), archivedChecksum.getChecksum());
+        assertArrayEquals(ChecksumAlgorithm.MD5.getInstance().digest(data), extractedChecksum.getChecksum());
+
+        try {
+            xos.write(0);
+            fail();
+
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
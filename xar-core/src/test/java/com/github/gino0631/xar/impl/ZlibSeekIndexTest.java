@@ -0,0 +1,156 @@
+package com.github.gino0631.xar.impl;
+
+import com.github.gino0631.common.io.IoStreams;
+import com.github.gino0631.xar.ChecksumAlgorithm;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ZlibSeekIndexTest {
+    private static final int SIZE = 2 * 1024 * 1024;
+    private static final int SPAN = 16 * 1024;
+
+    @Test
+    public void testDefaultCompression() throws Exception {
+        testSeek(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+    }
+
+    @Test
+    public void testBestSpeed() throws Exception {
+        testSeek(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY);
+    }
+
+    @Test
+    public void testBestCompression() throws Exception {
+        testSeek(Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+    }
+
+    @Test
+    public void testNoCompression() throws Exception {
+        testSeek(Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+    }
+
+    @Test
+    public void testHuffmanOnly() throws Exception {
+        testSeek(Deflater.DEFAULT_COMPRESSION, Deflater.HUFFMAN_ONLY);
+    }
+
+    @Test
+    public void testFiltered() throws Exception {
+        testSeek(Deflater.DEFAULT_COMPRESSION, Deflater.FILTERED);
+    }
+
+    @Test
+    public void testReadInvalid() throws Exception {
+        ZlibSeekIndex.read(new ByteArrayInputStream(index(1000, 2 * SPAN, 2, DeflateScanner.WINDOW_SIZE)));
+
+        int[][] invalid = {{-1, 0}, {3, 0}, {Integer.MAX_VALUE, 0}, {1, DeflateScanner.WINDOW_SIZE + 1}, {1, Integer.MAX_VALUE}};
+        for (int[] params : invalid) {
+            try {
+                ZlibSeekIndex.read(new ByteArrayInputStream(index(1000, 2 * SPAN, params[0], params[1])));
+                fail();
+
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    private static byte[] index(long archivedLength, long extractedSize, int count, int windowLength) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        try (DataOutputStream dos = new DataOutputStream(new DeflaterOutputStream(bos))) {
+            dos.writeInt(0x78736b69);
+            dos.writeInt(1);
+            dos.writeLong(archivedLength);
+            dos.writeLong(extractedSize);
+            dos.writeInt(-1);
+            dos.writeLong(SPAN);
+            dos.writeInt(count);
+
+            for (int i = 0; i < Math.min(count, 2); i++) {
+                dos.writeLong(8 * (i + 1));
+                dos.writeLong((long) SPAN * (i + 1));
+                dos.writeInt(windowLength);
+                dos.write(new byte[Math.min(windowLength, DeflateScanner.WINDOW_SIZE + 1)]);
+            }
+        }
+
+        return bos.toByteArray();
+    }
+
+    private static void testSeek(int level, int strategy) throws IOException {
+        // Alternate compressible and random runs, so that the stream has blocks of every type
+        Random random = new Random(level * 31 + strategy);
+        byte[] data = new byte[SIZE];
+        for (int off = 0; off < data.length; ) {
+            int len = Math.min(1 + random.nextInt(100_000), data.length - off);
+            boolean compressible = random.nextBoolean();
+
+            for (int i = off; i < off + len; i++) {
+                data[i] = compressible ? (byte) ('a' + random.nextInt(16)) : (byte) random.nextInt();
+            }
+
+            off += len;
+        }
+
+        Deflater deflater = new Deflater(level);
+        deflater.setStrategy(strategy);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DeflaterOutputStream os = new DeflaterOutputStream(bos, deflater)) {
+            os.write(data);
+        }
+
+        deflater.end();
+        byte[] archived = bos.toByteArray();
+        XarSource source = new StreamXarSource(() -> new ByteArrayInputStream(archived));
+
+        MessageDigest messageDigest = ChecksumAlgorithm.SHA1.getInstance();
+        ZlibSeekIndex seekIndex = ZlibSeekIndex.build(new ByteArrayInputStream(archived), archived.length, null, SPAN, messageDigest);
+
+        assertArrayEquals(ChecksumAlgorithm.SHA1.getInstance().digest(data), messageDigest.digest());
+        assertTrue(seekIndex.matches(archived.length, data.length, null));
+        assertTrue(seekIndex.getCheckpointCount() > SIZE / SPAN / 4);
+
+        // Save and load the index
+        ByteArrayOutputStream indexOutput = new ByteArrayOutputStream();
+        seekIndex.writeTo(indexOutput);
+        ZlibSeekIndex loadedIndex = ZlibSeekIndex.read(new ByteArrayInputStream(indexOutput.toByteArray()));
+        assertEquals(seekIndex.getCheckpointCount(), loadedIndex.getCheckpointCount());
+
+        assertNull(seekIndex.newInputStream(source, 0, SPAN - 1));
+
+        for (int i = 0, found = 0; found < 200; i++) {
+            int offset = SPAN + random.nextInt(data.length - SPAN);
+            int len = Math.min(1000, data.length - offset);
+
+            try (InputStream is = ((i % 2 == 0) ? seekIndex : loadedIndex).newInputStream(source, 0, offset)) {
+                if (is == null) {
+                    // Before the first checkpoint, which can be further than the span if blocks are large
+                    continue;
+                }
+
+                found++;
+                byte[] actual = new byte[len];
+                new DataInputStream(is).readFully(actual);
+                assertArrayEquals(Arrays.copyOfRange(data, offset, offset + len), actual);
+            }
+        }
+
+        try (InputStream is = seekIndex.newInputStream(source, 0, data.length - 10)) {
+            assertEquals(10, IoStreams.exhaust(is));
+        }
+    }
+}